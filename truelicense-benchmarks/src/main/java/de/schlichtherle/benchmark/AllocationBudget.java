@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.benchmark;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+/**
+ * Checks the number of bytes allocated per operation on the hot paths of
+ * the license pipeline against the budgets in the checked-in resource
+ * {@value #BUDGETS} and fails if any of them is exceeded.
+ * This runs in the {@code verify} phase of this module, so that the build
+ * stops allocation regressions before they ship.
+ * <p>
+ * Each operation runs {@value #WARMUP} times to get compiled and then
+ * {@value #ITERATIONS} times with the bytes allocated by the current thread
+ * being measured by
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ * The results are deterministic enough for a budget because they don't
+ * depend on the speed of the machine.
+ * The allocations of the JDK differ between its versions, so the budget of
+ * an operation may be specific to the running JDK as given by the system
+ * property {@code java.specification.version}.
+ * If you have intentionally changed the allocation profile of an operation,
+ * then update its budget in the resource, leaving some headroom.
+ * <p>
+ * Usage: {@code java -cp truelicense-benchmarks.jar
+ * de.schlichtherle.benchmark.AllocationBudget}
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+public final class AllocationBudget {
+
+    static final String BUDGETS = "allocation-budgets.properties"; // NOI18N
+
+    static final int WARMUP = 20000;
+    static final int ITERATIONS = 10000;
+
+    private static final String JDK
+            = System.getProperty("java.specification.version"); // NOI18N
+
+    private static final com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** Consumes the results, so that their allocation can't get eliminated. */
+    private static int sink;
+
+    private AllocationBudget() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Properties budgets = new Properties();
+        final InputStream in = AllocationBudget.class.getResourceAsStream(BUDGETS);
+        try {
+            budgets.load(in);
+        } finally {
+            in.close();
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        final LicenseFixture f = new LicenseFixture();
+        f.setUp();
+        int failures = 0;
+        try {
+            failures += check(budgets, "LicenseManager.verify", new Operation() {
+                public Object run() throws Exception {
+                    return f.manager.verify();
+                }
+            });
+            failures += check(budgets, "GenericCertificate.getContent", new Operation() {
+                public Object run() throws Exception {
+                    return f.certificate.getContent();
+                }
+            });
+            failures += check(budgets, "PrivacyGuard.key2cert", new Operation() {
+                public Object run() throws Exception {
+                    return f.guard.key2cert(f.key);
+                }
+            });
+        } finally {
+            f.tearDown();
+        }
+        if (0 != failures)
+            throw new IllegalStateException(failures
+                    + " allocation budget(s) exceeded."); // NOI18N
+    }
+
+    /**
+     * Measures the bytes allocated per run of the given operation and
+     * compares it to its budget for the running JDK or else its default
+     * budget.
+     *
+     * @return One if the budget is exceeded, zero otherwise.
+     */
+    private static int check(
+            final Properties budgets,
+            final String name,
+            final Operation operation)
+    throws Exception {
+        String value = budgets.getProperty(name + '.' + JDK);
+        if (null == value)
+            value = budgets.getProperty(name);
+        if (null == value)
+            throw new IllegalArgumentException(name);
+        final long budget = Long.parseLong(value.trim());
+        final long bytes = measure(operation);
+        final boolean ok = bytes <= budget;
+        System.out.println(name + ": " + bytes + " bytes/op, budget " // NOI18N
+                + budget + " bytes/op" + (ok ? "" : " - EXCEEDED!")); // NOI18N
+        return ok ? 0 : 1;
+    }
+
+    /** Returns the mean number of bytes allocated per run of the operation. */
+    private static long measure(final Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++)
+            sink += System.identityHashCode(operation.run());
+        final long id = Thread.currentThread().getId();
+        final long start = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ITERATIONS; i++)
+            sink += System.identityHashCode(operation.run());
+        final long end = threads.getThreadAllocatedBytes(id);
+        return (end - start) / ITERATIONS;
+    }
+
+    private interface Operation {
+        Object run() throws Exception;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.benchmark;
+
+import de.schlichtherle.license.KeyCompression;
+import de.schlichtherle.license.PrivacyGuard;
+import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.PersistenceService;
+import java.io.File;
+
+/**
+ * Prints the license key size and the average time for converting the
+ * license key back to a license certificate for each
+ * {@link KeyCompression} constant.
+ * <p>
+ * Usage: {@code java -cp truelicense-benchmarks.jar
+ * de.schlichtherle.benchmark.KeyCompressionComparison [file...]}
+ * <p>
+ * Each file must hold an XML encoded license certificate, e.g. as stored by
+ * {@link PersistenceService#store(Object, File)}.
+ * Without any files, the license certificate of the {@link LicenseFixture}
+ * gets compared.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+public final class KeyCompressionComparison {
+
+    static final int ROUNDS = 10000;
+
+    private KeyCompressionComparison() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final LicenseFixture f = new LicenseFixture();
+        f.setUp();
+        try {
+            if (0 == args.length) {
+                compare(LicenseFixture.SUBJECT, f.guard, f.certificate);
+            } else {
+                for (int i = 0; i < args.length; i++)
+                    compare(args[i], f.guard, (GenericCertificate)
+                            PersistenceService.load(new File(args[i])));
+            }
+        } finally {
+            f.tearDown();
+        }
+    }
+
+    private static void compare(
+            final String name,
+            final PrivacyGuard guard,
+            final GenericCertificate certificate)
+    throws Exception {
+        System.out.println(name + ": " // NOI18N
+                + PersistenceService.store2ByteArray(certificate).length
+                + " bytes"); // NOI18N
+        final KeyCompression[] values = KeyCompression.values();
+        for (int i = 0; i < values.length; i++) {
+            final KeyCompression compression = values[i];
+            guard.setKeyCompression(compression);
+            final byte[] key = guard.cert2key(certificate);
+            long time = 0;
+            for (int j = 0; j < 2 * ROUNDS; j++) {
+                if (j == ROUNDS) // warm up
+                    time = System.nanoTime();
+                guard.key2cert(key);
+            }
+            time = System.nanoTime() - time;
+            System.out.println("  " + compression // NOI18N
+                    + ": " + key.length + " bytes, " // NOI18N
+                    + (time / ROUNDS / 1000.0) + " us/key2cert"); // NOI18N
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.benchmark;
+
+import de.schlichtherle.license.CipherParam;
+import de.schlichtherle.license.DefaultCipherParam;
+import de.schlichtherle.license.DefaultKeyStoreParam;
+import de.schlichtherle.license.DefaultLicenseParam;
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.LicenseManager;
+import de.schlichtherle.license.LicenseNotary;
+import de.schlichtherle.license.LicenseParam;
+import de.schlichtherle.license.PrivacyGuard;
+import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.PersistenceService;
+import java.nio.ByteBuffer;
+import java.util.prefs.Preferences;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The shared state of all benchmarks: A license manager with an installed
+ * license key plus the intermediate artifacts of the license pipeline, i.e.
+ * the license content, its XML encoding, the locked license certificate and
+ * the license key.
+ * <p>
+ * The key store is checked in as a resource of this module and holds a
+ * 1024 bit DSA key pair under the alias {@value #ALIAS}.
+ * The license key gets installed in a new user preferences node, which is
+ * removed when the trial is over.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+public class LicenseFixture {
+
+    static final String SUBJECT = "TrueLicense Benchmark"; // NOI18N
+    static final String KEY_STORE = "benchmark.jks"; // NOI18N
+    static final String ALIAS = "benchmark"; // NOI18N
+    static final String STORE_PWD = "bench123"; // NOI18N
+    static final String KEY_PWD = "bench456"; // NOI18N
+    static final String CIPHER_PWD = "cipher123"; // NOI18N
+
+    Preferences prefs;
+    KeyStoreParam keyStoreParam;
+    CipherParam cipherParam;
+    LicenseParam licenseParam;
+    LicenseManager manager;
+    LicenseNotary notary;
+    PrivacyGuard guard;
+    LicenseContent content;
+    byte[] encoded;
+    GenericCertificate certificate;
+    byte[] key;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        prefs = Preferences.userNodeForPackage(LicenseFixture.class)
+                .node(Long.toHexString(System.nanoTime()));
+        keyStoreParam = new DefaultKeyStoreParam(LicenseFixture.class,
+                KEY_STORE, ALIAS, STORE_PWD, KEY_PWD);
+        cipherParam = new DefaultCipherParam(CIPHER_PWD);
+        licenseParam = new DefaultLicenseParam(SUBJECT, prefs,
+                keyStoreParam, cipherParam);
+        manager = new LicenseManager(licenseParam);
+        notary = new LicenseNotary(keyStoreParam);
+        guard = new PrivacyGuard(cipherParam);
+
+        key = manager.create(new LicenseContent());
+        content = manager.install(ByteBuffer.wrap(key));
+        encoded = PersistenceService.store2ByteArray(content);
+        certificate = guard.key2cert(key);
+        notary.verify(certificate);
+        manager.verify(); // warm up the cache
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        manager.uninstall();
+        prefs.removeNode();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.benchmark;
+
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.LicenseManager;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the public API of {@link LicenseManager}.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LicenseManagerBenchmark {
+
+    /** Initializes, validates, signs, encodes, compresses and encrypts. */
+    @Benchmark
+    public byte[] create(final LicenseFixture f) throws Exception {
+        return f.manager.create(new LicenseContent());
+    }
+
+    /**
+     * Decrypts, decompresses, decodes, verifies, validates and stores the
+     * license key to the preferences node.
+     */
+    @Benchmark
+    public LicenseContent install(final LicenseFixture f) throws Exception {
+        return f.manager.install(ByteBuffer.wrap(f.key));
+    }
+
+    /** Returns the cached license content. */
+    @Benchmark
+    public LicenseContent verifyCached(final LicenseFixture f)
+    throws Exception {
+        return f.manager.verify();
+    }
+
+    /**
+     * Loads the license key from the preferences node with a new license
+     * manager, like on the first call after starting an application.
+     */
+    @Benchmark
+    public LicenseContent verifyCold(final LicenseFixture f)
+    throws Exception {
+        return new LicenseManager(f.licenseParam).verify();
+    }
+}
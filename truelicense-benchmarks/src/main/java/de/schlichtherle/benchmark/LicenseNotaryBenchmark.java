@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.benchmark;
+
+import de.schlichtherle.license.LicenseNotary;
+import de.schlichtherle.xml.GenericCertificate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks signing and verifying license certificates by a
+ * {@link LicenseNotary}.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LicenseNotaryBenchmark {
+
+    /** Encodes and signs the license content. */
+    @Benchmark
+    public GenericCertificate sign(final LicenseFixture f) throws Exception {
+        return f.notary.sign(f.content);
+    }
+
+    /**
+     * Verifies an unlocked copy of the license certificate.
+     * This includes the cost of copying, which is small in comparison.
+     */
+    @Benchmark
+    public GenericCertificate verify(final LicenseFixture f)
+    throws Exception {
+        final GenericCertificate certificate
+                = new GenericCertificate(f.certificate);
+        f.notary.verify(certificate);
+        return certificate;
+    }
+}
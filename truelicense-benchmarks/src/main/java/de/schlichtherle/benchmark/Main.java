@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the given JMH command line options.
+ * Unlike {@code org.openjdk.jmh.Main}, this class always adds the
+ * {@link GCProfiler}, so that the allocation rate per operation gets
+ * reported along with the time per operation.
+ * <p>
+ * Usage: {@code java -jar truelicense-benchmarks.jar [JMH options]}
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+public final class Main {
+
+    private Main() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .parent(options)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
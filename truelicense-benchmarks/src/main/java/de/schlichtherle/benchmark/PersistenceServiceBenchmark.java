@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.benchmark;
+
+import de.schlichtherle.xml.PersistenceService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the XML encoding and decoding of license contents by the
+ * {@link PersistenceService}.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PersistenceServiceBenchmark {
+
+    @Benchmark
+    public byte[] store(final LicenseFixture f) throws Exception {
+        return PersistenceService.store2ByteArray(f.content);
+    }
+
+    @Benchmark
+    public Object load(final LicenseFixture f) throws Exception {
+        return PersistenceService.load(f.encoded);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.benchmark;
+
+import de.schlichtherle.license.PrivacyGuard;
+import de.schlichtherle.xml.GenericCertificate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the conversion between license certificates and license keys by
+ * a {@link PrivacyGuard}.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PrivacyGuardBenchmark {
+
+    /** Encodes, compresses and encrypts. */
+    @Benchmark
+    public byte[] cert2key(final LicenseFixture f) throws Exception {
+        return f.guard.cert2key(f.certificate);
+    }
+
+    /** Decrypts, decompresses and decodes. */
+    @Benchmark
+    public GenericCertificate key2cert(final LicenseFixture f)
+    throws Exception {
+        return f.guard.key2cert(f.key);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.benchmark;
+
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.SeatManager;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs {@value #THREADS} threads which randomly acquire, renew and release
+ * leases from a {@link SeatManager} with {@value #SEATS} seats while they
+ * advance a shared manual clock, so that some leases expire, too.
+ * Fails if the number of seats in use ever leaves the range from zero to
+ * the capacity or if, after all leases have been released or expired, the
+ * number of acquired leases is not the sum of the released and the expired
+ * leases.
+ * This runs in the {@code verify} phase of this module, just like
+ * {@link AllocationBudget}.
+ * <p>
+ * Usage: {@code java -cp truelicense-benchmarks.jar
+ * de.schlichtherle.benchmark.SeatManagerStress}
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+public final class SeatManagerStress {
+
+    static final int THREADS = 8;
+    static final int SEATS = 100;
+    static final int OPERATIONS = 200000;
+    static final long LEASE_MILLIS = 6400;
+
+    private SeatManagerStress() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final LicenseContent content = new LicenseContent();
+        content.setConsumerAmount(SEATS);
+        final ManualClock clock = new ManualClock();
+        final SeatManager manager
+                = new SeatManager(content.freeze(), LEASE_MILLIS, clock);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure
+                = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final long seed = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        stress(manager, clock, new Random(seed));
+                    } catch (final Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            }, "SeatManagerStress-" + i); // NOI18N
+            threads[i].start();
+        }
+        start.countDown();
+        for (final Thread thread : threads)
+            thread.join();
+        if (null != failure.get())
+            throw new IllegalStateException(failure.get());
+
+        clock.advance(2 * LEASE_MILLIS);
+        manager.expire();
+        final long acquired = manager.getAcquiredCount();
+        final long released = manager.getReleasedCount();
+        final long expired = manager.getExpiredCount();
+        System.out.println("SeatManager: " + acquired + " acquired, " // NOI18N
+                + released + " released, " + expired + " expired, " // NOI18N
+                + manager.getRejectedCount() + " rejected, " // NOI18N
+                + manager.getUsed() + " used"); // NOI18N
+        if (acquired != released + expired)
+            throw new IllegalStateException(acquired + " acquired != " // NOI18N
+                    + released + " released + " + expired + " expired."); // NOI18N
+        if (0 != manager.getUsed())
+            throw new IllegalStateException(manager.getUsed()
+                    + " seat(s) still used."); // NOI18N
+    }
+
+    private static void stress(
+            final SeatManager manager,
+            final ManualClock clock,
+            final Random random) {
+        final ArrayDeque<SeatManager.Lease> leases
+                = new ArrayDeque<SeatManager.Lease>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            if (0 == random.nextInt(100))
+                clock.advance(random.nextInt(200));
+            final int op = random.nextInt(3);
+            if (0 == op || leases.isEmpty()) {
+                final SeatManager.Lease lease = manager.tryAcquire();
+                if (null != lease)
+                    leases.add(lease);
+            } else if (1 == op) {
+                leases.poll().release();
+            } else {
+                final SeatManager.Lease lease = leases.poll();
+                if (lease.renew())
+                    leases.add(lease);
+            }
+            checkUsed(manager);
+        }
+        for (final SeatManager.Lease lease : leases)
+            lease.release();
+        checkUsed(manager);
+    }
+
+    private static void checkUsed(final SeatManager manager) {
+        final int used = manager.getUsed();
+        if (0 > used || manager.getCapacity() < used)
+            throw new IllegalStateException(used + " seat(s) used out of " // NOI18N
+                    + manager.getCapacity() + "."); // NOI18N
+    }
+
+    /** A clock which only advances when told to. */
+    private static final class ManualClock extends Clock {
+        private final AtomicLong millis
+                = new AtomicLong(System.currentTimeMillis());
+
+        void advance(final long millis) {
+            this.millis.addAndGet(millis);
+        }
+
+        public long millis() {
+            return millis.get();
+        }
+
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable set of feature identifiers which a license entitles to use.
+ * The identifiers are indexed in an open addressing hash table when the set
+ * is created, so that {@link #isEntitled(String)} runs in constant time
+ * and does not allocate any objects - the hash code of the given string is
+ * cached by the string itself after its first use.
+ * <p>
+ * Instances of this class are created when the {@code features} property
+ * of a {@link LicenseContent} is set, which includes decoding it from a
+ * license key.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseContent#getFeatureSet()
+ * @see LicenseContentSnapshot#getFeatureSet()
+ */
+public final class FeatureSet implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** The empty feature set. */
+    public static final FeatureSet EMPTY = new FeatureSet(new String[0]);
+
+    /** The distinct feature identifiers in ascending order. */
+    private final String[] features;
+
+    /** The hash table with a load factor of at most one half. */
+    private final transient String[] table;
+
+    private final transient int mask;
+
+    private FeatureSet(final String[] features) {
+        this.features = features;
+        int capacity = 2;
+        while (capacity < 2 * features.length)
+            capacity <<= 1;
+        final String[] table = new String[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < features.length; i++) {
+            final String feature = features[i];
+            int j = index(feature, mask);
+            while (null != table[j])
+                j = (j + 1) & mask;
+            table[j] = feature;
+        }
+        this.table = table;
+        this.mask = mask;
+    }
+
+    /**
+     * Returns a feature set with the given feature identifiers.
+     * Duplicate identifiers are ignored.
+     *
+     * @param  features the feature identifiers
+     *         - may be {@code null} to return {@link #EMPTY}.
+     * @return A feature set - {@code null} is never returned.
+     * @throws NullPointerException if any identifier is {@code null}.
+     */
+    public static FeatureSet of(final String[] features) {
+        if (null == features || 0 == features.length)
+            return EMPTY;
+        final String[] sorted = features.clone();
+        Arrays.sort(sorted); // throws NullPointerException on null elements
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++)
+            if (0 == n || !sorted[n - 1].equals(sorted[i]))
+                sorted[n++] = sorted[i];
+        return new FeatureSet(n < sorted.length
+                ? Arrays.copyOf(sorted, n)
+                : sorted);
+    }
+
+    private static int index(final String feature, final int mask) {
+        final int h = feature.hashCode();
+        return (h ^ h >>> 16) & mask;
+    }
+
+    /**
+     * Returns {@code true} if and only if this set contains the given
+     * feature identifier.
+     * This method does not allocate any objects.
+     *
+     * @param  feature the feature identifier - may be {@code null}.
+     */
+    public boolean isEntitled(final String feature) {
+        if (null == feature)
+            return false;
+        final String[] table = this.table;
+        for (int i = index(feature, mask); ; i = (i + 1) & mask) {
+            final String f = table[i];
+            if (null == f)
+                return false;
+            if (f.equals(feature))
+                return true;
+        }
+    }
+
+    /** Returns the number of feature identifiers in this set. */
+    public int size() {
+        return features.length;
+    }
+
+    /**
+     * Returns a new array with the feature identifiers in this set in
+     * ascending order.
+     */
+    public String[] toArray() {
+        return features.clone();
+    }
+
+    /**
+     * Returns {@code true} if and only if {@code object} is a
+     * {@code FeatureSet} with the same feature identifiers.
+     */
+    public boolean equals(final Object object) {
+        return this == object
+                || object instanceof FeatureSet
+                && Arrays.equals(features, ((FeatureSet) object).features);
+    }
+
+    /**
+     * Returns the sum of the hash codes of the feature identifiers in this
+     * set, just like {@link java.util.Set#hashCode()}.
+     */
+    public int hashCode() {
+        int c = 0;
+        for (int i = 0; i < features.length; i++)
+            c += features[i].hashCode();
+        return c;
+    }
+
+    public String toString() {
+        return Arrays.toString(features);
+    }
+
+    /** Rebuilds the hash table after deserialization. */
+    private Object readResolve() throws ObjectStreamException {
+        return of(features);
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Enumerates the compression stages which a {@link PrivacyGuard} may apply
+ * to the encoded license certificate before encrypting it to a license key.
+ * <p>
+ * The compression stage is selected when a license key gets created only:
+ * When a license key gets decrypted, the stage is detected from the first
+ * byte of the plain text, so that license keys created with any constant of
+ * this enumeration (including legacy license keys which have always been
+ * compressed with {@link #GZIP}) are accepted regardless of the current
+ * configuration.
+ * <p>
+ * For a typical license certificate of about two kilobytes of XML,
+ * {@link #DEFLATE} results in considerably smaller license keys than
+ * {@link #GZIP}, because it doesn't need to write a header and a trailer and
+ * most of the XML markup gets encoded as back references into a preset
+ * dictionary.
+ * Run {@code de.schlichtherle.benchmark.KeyCompressionComparison} in the
+ * benchmarks module in order to compare the key size and decompression time
+ * of the constants.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see PrivacyGuard#setKeyCompression(KeyCompression)
+ */
+public enum KeyCompression {
+
+    /**
+     * Doesn't compress the encoded license certificate at all.
+     * This trades key size for the least CPU time.
+     */
+    NONE {
+        OutputStream compress(OutputStream out) {
+            return out;
+        }
+    },
+
+    /**
+     * Compresses the encoded license certificate with GZIP.
+     * This is the legacy format which is understood by all versions of
+     * TrueLicense and hence the default.
+     */
+    GZIP {
+        OutputStream compress(OutputStream out) throws IOException {
+            out.write(GZIP_HEADER);
+            return new PooledGZIPOutputStream(out);
+        }
+    },
+
+    /**
+     * Compresses the encoded license certificate with raw Deflate using a
+     * preset dictionary which has been trained on typical XML encoded
+     * {@link de.schlichtherle.xml.GenericCertificate}s and
+     * {@link LicenseContent}s.
+     * The result is prefixed with a single version byte in order to identify
+     * the dictionary.
+     * License keys created with this constant cannot get installed or
+     * verified by versions of TrueLicense which predate it.
+     */
+    DEFLATE {
+        OutputStream compress(final OutputStream out) throws IOException {
+            out.write(DEFLATE_V1);
+            final Deflater def = ZlibPool.deflater(Deflater.BEST_COMPRESSION);
+            def.setDictionary(DICTIONARY_V1);
+            return new PooledDeflaterOutputStream(out, def);
+        }
+    };
+
+    /** The first byte of a GZIP stream. */
+    private static final int GZIP_MAGIC = 0x1f;
+
+    /**
+     * The header of a GZIP stream as written by
+     * {@link java.util.zip.GZIPOutputStream}.
+     */
+    private static final byte[] GZIP_HEADER = {
+        (byte) GZIP_MAGIC, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    // GZIP header flags.
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    /** The first byte of an uncompressed XML document. */
+    private static final int XML_MAGIC = '<';
+
+    /** The version byte of a raw Deflate stream using {@link #DICTIONARY_V1}. */
+    private static final int DEFLATE_V1 = 0x01;
+
+    /**
+     * The preset dictionary for {@link #DEFLATE}.
+     * This is the skeleton of a typical license key with all the variable
+     * data removed.
+     * <b>Never change this</b> or otherwise existing license keys can't
+     * get decompressed anymore - add a new version instead!
+     */
+    private static final byte[] DICTIONARY_V1 = (
+              "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<java version=\"1.8.0\" class=\"java.beans.XMLDecoder\">\n"
+            + " <object class=\"de.schlichtherle.xml.GenericCertificate\">\n"
+            + "  <void property=\"encoded\">\n"
+            + "   <string>&lt;?xml version=&quot;1.0&quot; encoding=&quot;UTF-8&quot;?&gt;\n"
+            + "&lt;java version=&quot;1.8.0&quot; class=&quot;java.beans.XMLDecoder&quot;&gt;\n"
+            + " &lt;object class=&quot;de.schlichtherle.license.LicenseContent&quot;&gt;\n"
+            + "  &lt;void property=&quot;consumerAmount&quot;&gt;\n"
+            + "   &lt;int&gt;1&lt;/int&gt;\n"
+            + "  &lt;/void&gt;\n"
+            + "  &lt;void property=&quot;consumerType&quot;&gt;\n"
+            + "   &lt;string&gt;System&lt;/string&gt;\n"
+            + "  &lt;/void&gt;\n"
+            + "  &lt;void property=&quot;holder&quot;&gt;\n"
+            + "   &lt;object class=&quot;javax.security.auth.x500.X500Principal&quot;&gt;\n"
+            + "    &lt;string&gt;CN=&lt;/string&gt;\n"
+            + "   &lt;/object&gt;\n"
+            + "  &lt;/void&gt;\n"
+            + "  &lt;void property=&quot;info&quot;&gt;\n"
+            + "   &lt;string&gt;&lt;/string&gt;\n"
+            + "  &lt;/void&gt;\n"
+            + "  &lt;void property=&quot;issued&quot;&gt;\n"
+            + "   &lt;object class=&quot;java.util.Date&quot;&gt;\n"
+            + "    &lt;long&gt;1&lt;/long&gt;\n"
+            + "   &lt;/object&gt;\n"
+            + "  &lt;/void&gt;\n"
+            + "  &lt;void property=&quot;issuer&quot;&gt;\n"
+            + "   &lt;object class=&quot;javax.security.auth.x500.X500Principal&quot;&gt;\n"
+            + "    &lt;string&gt;CN=&lt;/string&gt;\n"
+            + "   &lt;/object&gt;\n"
+            + "  &lt;/void&gt;\n"
+            + "  &lt;void property=&quot;notAfter&quot;&gt;\n"
+            + "   &lt;object class=&quot;java.util.Date&quot;&gt;\n"
+            + "    &lt;long&gt;1&lt;/long&gt;\n"
+            + "   &lt;/object&gt;\n"
+            + "  &lt;/void&gt;\n"
+            + "  &lt;void property=&quot;notBefore&quot;&gt;\n"
+            + "   &lt;object class=&quot;java.util.Date&quot;&gt;\n"
+            + "    &lt;long&gt;1&lt;/long&gt;\n"
+            + "   &lt;/object&gt;\n"
+            + "  &lt;/void&gt;\n"
+            + "  &lt;void property=&quot;subject&quot;&gt;\n"
+            + "   &lt;string&gt;&lt;/string&gt;\n"
+            + "  &lt;/void&gt;\n"
+            + " &lt;/object&gt;\n"
+            + "&lt;/java&gt;\n"
+            + "</string>\n"
+            + "  </void>\n"
+            + "  <void property=\"signature\">\n"
+            + "   <string></string>\n"
+            + "  </void>\n"
+            + "  <void property=\"signatureAlgorithm\">\n"
+            + "   <string>SHA1withDSA</string>\n"
+            + "  </void>\n"
+            + "  <void property=\"signatureEncoding\">\n"
+            + "   <string>US-ASCII/Base64</string>\n"
+            + "  </void>\n"
+            + " </object>\n"
+            + "</java>\n"
+            ).getBytes(StandardCharsets.UTF_8); // NOI18N
+
+    /**
+     * Returns a new output stream which compresses all data written to it
+     * into the given output stream.
+     * Closing the returned stream closes the given stream.
+     */
+    abstract OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * Returns a new input stream which decompresses the data read from the
+     * given input stream, detecting the compression stage which has been
+     * used to create it.
+     * Closing the returned stream closes the given stream.
+     *
+     * @throws ZipException If the compression stage cannot get detected.
+     */
+    static InputStream decompress(final InputStream in) throws IOException {
+        final PushbackInputStream pin = new PushbackInputStream(in, 1);
+        final int magic = pin.read();
+        switch (magic) {
+            case GZIP_MAGIC:
+                pin.unread(magic);
+                readGZIPHeader(pin);
+                return new PooledGZIPInputStream(pin);
+            case XML_MAGIC:
+                pin.unread(magic);
+                return pin;
+            case DEFLATE_V1:
+                final Inflater inf = ZlibPool.inflater();
+                inf.setDictionary(DICTIONARY_V1);
+                return new PooledInflaterInputStream(pin, inf);
+            default:
+                if (0 > magic)
+                    throw new EOFException();
+                throw new ZipException(String.format(
+                        "Unknown key compression 0x%02x", magic)); // NOI18N
+        }
+    }
+
+    /**
+     * Reads and checks the header of a GZIP stream from the given input
+     * stream.
+     */
+    private static void readGZIPHeader(final InputStream in)
+    throws IOException {
+        final CheckedInputStream cin = new CheckedInputStream(in, new CRC32());
+        if (GZIP_MAGIC != readUByte(cin) || 0x8b != readUByte(cin))
+            throw new ZipException("Not in GZIP format"); // NOI18N
+        if (Deflater.DEFLATED != readUByte(cin))
+            throw new ZipException("Unsupported compression method"); // NOI18N
+        final int flags = readUByte(cin);
+        for (int i = 6; 0 < i; i--) // skip MTIME, XFL and OS
+            readUByte(cin);
+        if (0 != (flags & FEXTRA))
+            for (int i = readUShort(cin); 0 < i; i--)
+                readUByte(cin);
+        if (0 != (flags & FNAME))
+            while (0 != readUByte(cin)) {
+            }
+        if (0 != (flags & FCOMMENT))
+            while (0 != readUByte(cin)) {
+            }
+        if (0 != (flags & FHCRC)) {
+            final int crc = (int) cin.getChecksum().getValue() & 0xffff;
+            if (crc != readUShort(cin))
+                throw new ZipException("Corrupt GZIP header"); // NOI18N
+        }
+    }
+
+    private static int readUByte(final InputStream in) throws IOException {
+        final int b = in.read();
+        if (0 > b)
+            throw new EOFException();
+        return b;
+    }
+
+    private static int readUShort(final InputStream in) throws IOException {
+        return readUByte(in) | readUByte(in) << 8;
+    }
+
+    private static long readUInt(final InputStream in) throws IOException {
+        return (readUShort(in) | (long) readUShort(in) << 16);
+    }
+
+    /**
+     * A deflater output stream which returns its deflater to the
+     * {@link ZlibPool} when closed.
+     */
+    private static class PooledDeflaterOutputStream
+    extends DeflaterOutputStream {
+        private boolean closed;
+
+        PooledDeflaterOutputStream(OutputStream out, Deflater def) {
+            super(out, def);
+        }
+
+        final void ensureOpen() throws IOException {
+            if (closed)
+                throw new IOException("Stream closed"); // NOI18N
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            super.write(b, off, len);
+        }
+
+        public void finish() throws IOException {
+            ensureOpen();
+            super.finish();
+        }
+
+        public void flush() throws IOException {
+            ensureOpen();
+            super.flush();
+        }
+
+        public void close() throws IOException {
+            if (closed)
+                return;
+            try {
+                finish();
+            } finally {
+                closed = true;
+                try {
+                    out.close();
+                } finally {
+                    ZlibPool.release(def);
+                }
+            }
+        }
+    }
+
+    /**
+     * A pooled deflater output stream which writes the checksum and size
+     * trailer of a GZIP stream.
+     * The header needs to get written before this stream is created.
+     */
+    private static final class PooledGZIPOutputStream
+    extends PooledDeflaterOutputStream {
+        private final CRC32 crc = new CRC32();
+
+        PooledGZIPOutputStream(OutputStream out) {
+            super(out, ZlibPool.deflater(Deflater.DEFAULT_COMPRESSION));
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        public void finish() throws IOException {
+            ensureOpen();
+            if (def.finished())
+                return;
+            super.finish();
+            final long crc = this.crc.getValue();
+            final long size = def.getBytesRead();
+            out.write(new byte[] {
+                (byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+                (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+            });
+        }
+    }
+
+    /**
+     * An inflater input stream which returns its inflater to the
+     * {@link ZlibPool} when closed.
+     */
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        PooledInflaterInputStream(InputStream in, Inflater inf) {
+            super(in, inf);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IOException("Stream closed"); // NOI18N
+            return super.read(b, off, len);
+        }
+
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                in.close();
+            } finally {
+                ZlibPool.release(inf);
+            }
+        }
+    }
+
+    /**
+     * A pooled inflater input stream which reads and checks the checksum
+     * and size trailer of a GZIP stream.
+     * The header needs to get read before this stream is created.
+     */
+    private static final class PooledGZIPInputStream
+    extends PooledInflaterInputStream {
+        private final CRC32 crc = new CRC32();
+        private boolean eos;
+
+        PooledGZIPInputStream(InputStream in) {
+            super(in, ZlibPool.inflater());
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eos)
+                return -1;
+            final int n = super.read(b, off, len);
+            if (0 > n) {
+                readTrailer();
+                eos = true;
+            } else {
+                crc.update(b, off, n);
+            }
+            return n;
+        }
+
+        private void readTrailer() throws IOException {
+            final int remaining = inf.getRemaining();
+            final InputStream in = 0 < remaining
+                    ? new SequenceInputStream(
+                        new ByteArrayInputStream(buf, len - remaining, remaining),
+                        this.in)
+                    : this.in;
+            if (crc.getValue() != readUInt(in)
+                    || (inf.getBytesWritten() & 0xffffffffL) != readUInt(in))
+                throw new ZipException("Corrupt GZIP trailer"); // NOI18N
+        }
+    }
+}
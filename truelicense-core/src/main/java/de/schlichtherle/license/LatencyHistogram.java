@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with log-linear buckets:
+ * Each power of two is divided into eight linear buckets, so any recorded
+ * value is reported with a relative error of less than 12.5%.
+ * Durations of 2<sup>40</sup> nanoseconds (about 18 minutes) or more fall
+ * into the last bucket.
+ * Recording a value is a single atomic increment.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+final class LatencyHistogram {
+
+    /** The number of bits for the linear sub-buckets of a power of two. */
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** The exponent of the smallest value in the last bucket. */
+    private static final int MAX_EXP = 40;
+
+    static final int BUCKETS = (MAX_EXP - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** Returns the index of the bucket for the given value. */
+    static int index(final long value) {
+        if (SUB_BUCKETS > value)
+            return 0 > value ? 0 : (int) value;
+        final int exp = 63 - Long.numberOfLeadingZeros(value);
+        if (MAX_EXP <= exp)
+            return BUCKETS - 1;
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS
+                + (int) (value >>> (exp - SUB_BITS)) - SUB_BUCKETS;
+    }
+
+    /** Returns the highest value which falls into the bucket with the given index. */
+    static long highest(final int index) {
+        if (SUB_BUCKETS > index)
+            return index;
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    void record(final long nanos) {
+        counts.incrementAndGet(index(nanos));
+    }
+
+    /**
+     * Returns the value at the given percentile or zero if no value has
+     * been recorded.
+     *
+     * @param percentile the percentile, e.g. {@code 99.9}.
+     */
+    long percentile(final double percentile) {
+        final long[] counts = snapshot();
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += counts[i];
+        if (0 == total)
+            return 0;
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            if (rank <= (sum += counts[i]))
+                return highest(i);
+        return highest(BUCKETS - 1);
+    }
+
+    /** Returns the highest recorded value or zero if no value has been recorded. */
+    long max() {
+        for (int i = BUCKETS; 0 <= --i; )
+            if (0 != counts.get(i))
+                return highest(i);
+        return 0;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+    }
+
+    private long[] snapshot() {
+        final long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            snapshot[i] = counts.get(i);
+        return snapshot;
+    }
+}
@@ -59,6 +59,10 @@ public class LicenseContent implements Serializable, Cloneable {
     private int consumerAmount = 1;
     private String info;
     private Object extra;
+    private String[] features;
+
+    /** The index of {@link #features}. */
+    private transient FeatureSet featureSet; // lazy initialized
 
     /**
      * Utility field used by bound properties.
@@ -333,6 +337,140 @@ public class LicenseContent implements Serializable, Cloneable {
         firePropertyChange("extra", oldExtra, extra); // NOI18N
     }
 
+    /**
+     * Returns the value of the property {@code features}.
+     * This property may be used to list the identifiers of the features
+     * which this license entitles to use.
+     * The default is {@code null}.
+     *
+     * @return A clone of the value of the property {@code features}.
+     * @see    #isEntitled(String)
+     */
+    public String[] getFeatures() {
+        return null != this.features ? this.features.clone() : null;
+    }
+
+    /**
+     * Sets the value of the property {@code features}.
+     * This property may be used to list the identifiers of the features
+     * which this license entitles to use.
+     * The identifiers are indexed immediately, so that
+     * {@link #isEntitled(String)} doesn't need to parse anything.
+     * <p>
+     * <b>Warning:</b> If you use this property, versions of the TrueLicense
+     * Library Collection which predate it will fail to install or verify
+     * the generated license key with a
+     * {@link de.schlichtherle.xml.PersistenceServiceException}!
+     *
+     * @param features New value of bound property {@code features}.
+     *        - may be {@code null}, but must not contain {@code null}
+     *        elements.
+     * @throws NullPointerException if {@code features} contains a
+     *         {@code null} element.
+     */
+    public void setFeatures(final String[] features) {
+        final String[] oldFeatures = getFeatures();
+        final FeatureSet featureSet = FeatureSet.of(features);
+        this.features = null != features ? features.clone() : null;
+        this.featureSet = featureSet;
+        firePropertyChange("features", oldFeatures, getFeatures()); // NOI18N
+    }
+
+    /**
+     * Returns the immutable index of the property {@code features}.
+     *
+     * @return The feature set - {@code null} is never returned.
+     */
+    public FeatureSet getFeatureSet() {
+        FeatureSet featureSet = this.featureSet;
+        if (null == featureSet)
+            this.featureSet = featureSet = FeatureSet.of(this.features);
+        return featureSet;
+    }
+
+    /**
+     * Returns {@code true} if and only if the property {@code features}
+     * contains the given feature identifier.
+     * This method runs in constant time and does not allocate any objects.
+     *
+     * @param  feature the feature identifier - may be {@code null}.
+     * @see    FeatureSet#isEntitled(String)
+     */
+    public boolean isEntitled(final String feature) {
+        return getFeatureSet().isEntitled(feature);
+    }
+
+    /**
+     * Returns an immutable snapshot of the current properties of this
+     * license content.
+     * The snapshot is not affected by any subsequent changes to this object.
+     *
+     * @return An immutable snapshot of this license content
+     *         - {@code null} is never returned.
+     * @see    LicenseManager#verifySnapshot()
+     */
+    public LicenseContentSnapshot freeze() {
+        return new LicenseContentSnapshot(
+                holder, issuer, subject,
+                issued, notBefore, notAfter,
+                consumerType, consumerAmount,
+                info, extra, getFeatureSet());
+    }
+
+    /**
+     * Returns a copy of this instance without any property change listeners
+     * or {@code null} if the copy could share mutable state with this
+     * instance, i.e. if this is an instance of a subclass or the value of the
+     * {@code extra} property is not known to be immutable.
+     * All other properties are either immutable or get cloned by their
+     * getters and setters.
+     */
+    LicenseContent copy() {
+        if (LicenseContent.class != getClass() || !isImmutable(extra))
+            return null;
+        try {
+            final LicenseContent copy = (LicenseContent) super.clone();
+            copy.propertySupport = null;
+            return copy;
+        } catch (CloneNotSupportedException exc) {
+            throw new AssertionError(exc);
+        }
+    }
+
+    private static boolean isImmutable(final Object value) {
+        if (null == value)
+            return true;
+        final Class<?> c = value.getClass();
+        return String.class == c
+                || Boolean.class == c
+                || Character.class == c
+                || Byte.class == c
+                || Short.class == c
+                || Integer.class == c
+                || Long.class == c
+                || Float.class == c
+                || Double.class == c;
+    }
+
+    //
+    // The following methods return the internal value of a property without
+    // cloning it, so that the license manager can validate a license content
+    // without allocating any objects.
+    // The returned objects must not be modified!
+    //
+
+    Date issued() {
+        return issued;
+    }
+
+    Date notBefore() {
+        return notBefore;
+    }
+
+    Date notAfter() {
+        return notAfter;
+    }
+
     /**
      * Returns {@code true} if and only if {@code object} is an instance of
      * {@code LicenseContent} and their properties are considered equal.
@@ -346,6 +484,7 @@ public class LicenseContent implements Serializable, Cloneable {
         return this.getConsumerAmount() == that.getConsumerAmount()
                 && equals(this.getConsumerType(), that.getConsumerType())
                 && equals(this.getExtra(), that.getExtra())
+                && this.getFeatureSet().equals(that.getFeatureSet())
                 && equals(this.getHolder(), that.getHolder())
                 && equals(this.getInfo(), that.getInfo())
                 && equals(this.getIssued(), that.getIssued())
@@ -370,6 +509,7 @@ public class LicenseContent implements Serializable, Cloneable {
         c = 37 * c + getConsumerAmount();
         c = 37 * c + hash(getConsumerType());
         c = 37 * c + hash(getExtra());
+        c = 37 * c + getFeatureSet().hashCode();
         c = 37 * c + hash(getHolder());
         c = 37 * c + hash(getInfo());
         c = 37 * c + hash(getIssued());
@@ -49,23 +49,25 @@ public class LicenseContentBeanInfo extends SimpleBeanInfo {
     private static final int PROPERTY_consumerAmount = 0;
     private static final int PROPERTY_consumerType = 1;
     private static final int PROPERTY_extra = 2;
-    private static final int PROPERTY_holder = 3;
-    private static final int PROPERTY_info = 4;
-    private static final int PROPERTY_issued = 5;
-    private static final int PROPERTY_issuer = 6;
-    private static final int PROPERTY_notAfter = 7;
-    private static final int PROPERTY_notBefore = 8;
-    private static final int PROPERTY_subject = 9;
+    private static final int PROPERTY_features = 3;
+    private static final int PROPERTY_holder = 4;
+    private static final int PROPERTY_info = 5;
+    private static final int PROPERTY_issued = 6;
+    private static final int PROPERTY_issuer = 7;
+    private static final int PROPERTY_notAfter = 8;
+    private static final int PROPERTY_notBefore = 9;
+    private static final int PROPERTY_subject = 10;
 
     // Property array 
     /*lazy PropertyDescriptor*/
     private static PropertyDescriptor[] getPdescriptor(){
-        PropertyDescriptor[] properties = new PropertyDescriptor[10];
+        PropertyDescriptor[] properties = new PropertyDescriptor[11];
     
         try {
             properties[PROPERTY_consumerAmount] = new PropertyDescriptor ( "consumerAmount", de.schlichtherle.license.LicenseContent.class, "getConsumerAmount", "setConsumerAmount" ); // NOI18N
             properties[PROPERTY_consumerType] = new PropertyDescriptor ( "consumerType", de.schlichtherle.license.LicenseContent.class, "getConsumerType", "setConsumerType" ); // NOI18N
             properties[PROPERTY_extra] = new PropertyDescriptor ( "extra", de.schlichtherle.license.LicenseContent.class, "getExtra", "setExtra" ); // NOI18N
+            properties[PROPERTY_features] = new PropertyDescriptor ( "features", de.schlichtherle.license.LicenseContent.class, "getFeatures", "setFeatures" ); // NOI18N
             properties[PROPERTY_holder] = new PropertyDescriptor ( "holder", de.schlichtherle.license.LicenseContent.class, "getHolder", "setHolder" ); // NOI18N
             properties[PROPERTY_info] = new PropertyDescriptor ( "info", de.schlichtherle.license.LicenseContent.class, "getInfo", "setInfo" ); // NOI18N
             properties[PROPERTY_issued] = new PropertyDescriptor ( "issued", de.schlichtherle.license.LicenseContent.class, "getIssued", "setIssued" ); // NOI18N
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * An immutable snapshot of the properties of a {@link LicenseContent}.
+ * Unlike a license content, a snapshot provides its time stamps as
+ * primitive milliseconds since the epoch, never fires any events and
+ * has a precomputed hash code, so it can be shared freely and read on hot
+ * paths without allocating any objects.
+ * <p>
+ * Absent time stamps are represented by sentinel values which make range
+ * checks straightforward:
+ * An absent {@code notBefore} is {@link Long#MIN_VALUE} and an absent
+ * {@code notAfter} is {@link Long#MAX_VALUE}, so that
+ * {@link #isValidAt(long)} is just two comparisons.
+ * An absent {@code issued} is {@link Long#MIN_VALUE}, too.
+ * <p>
+ * Note that the {@code extra} property is shared with the license content
+ * which the snapshot has been created from, so its immutability depends on
+ * the application.
+ * Properties of subclasses of {@code LicenseContent} are not captured.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseContent#freeze()
+ * @see LicenseManager#verifySnapshot()
+ */
+public final class LicenseContentSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final X500Principal holder;
+    private final X500Principal issuer;
+    private final String subject;
+    private final long issued;
+    private final long notBefore;
+    private final long notAfter;
+    private final String consumerType;
+    private final int consumerAmount;
+    private final String info;
+    private final Object extra;
+    private final FeatureSet featureSet;
+    private final int hashCode;
+
+    LicenseContentSnapshot(
+            final X500Principal holder,
+            final X500Principal issuer,
+            final String subject,
+            final Date issued,
+            final Date notBefore,
+            final Date notAfter,
+            final String consumerType,
+            final int consumerAmount,
+            final String info,
+            final Object extra,
+            final FeatureSet featureSet) {
+        this.holder = holder;
+        this.issuer = issuer;
+        this.subject = subject;
+        this.issued = null != issued ? issued.getTime() : Long.MIN_VALUE;
+        this.notBefore = null != notBefore ? notBefore.getTime() : Long.MIN_VALUE;
+        this.notAfter = null != notAfter ? notAfter.getTime() : Long.MAX_VALUE;
+        this.consumerType = consumerType;
+        this.consumerAmount = consumerAmount;
+        this.info = info;
+        this.extra = extra;
+        this.featureSet = featureSet;
+        this.hashCode = computeHashCode();
+    }
+
+    /** Returns the license holder or {@code null} if absent. */
+    public X500Principal getHolder() {
+        return holder;
+    }
+
+    /** Returns the license issuer or {@code null} if absent. */
+    public X500Principal getIssuer() {
+        return issuer;
+    }
+
+    /** Returns the license subject or {@code null} if absent. */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * Returns the issue date in milliseconds since the epoch or
+     * {@link Long#MIN_VALUE} if absent.
+     */
+    public long getIssuedMillis() {
+        return issued;
+    }
+
+    /**
+     * Returns the start of the validity period in milliseconds since the
+     * epoch or {@link Long#MIN_VALUE} if absent.
+     */
+    public long getNotBeforeMillis() {
+        return notBefore;
+    }
+
+    /**
+     * Returns the end of the validity period in milliseconds since the
+     * epoch or {@link Long#MAX_VALUE} if absent.
+     */
+    public long getNotAfterMillis() {
+        return notAfter;
+    }
+
+    /** Returns the license consumer type or {@code null} if absent. */
+    public String getConsumerType() {
+        return consumerType;
+    }
+
+    /** Returns the license consumer amount. */
+    public int getConsumerAmount() {
+        return consumerAmount;
+    }
+
+    /** Returns the license information or {@code null} if absent. */
+    public String getInfo() {
+        return info;
+    }
+
+    /**
+     * Returns the private application data or {@code null} if absent.
+     * This object is shared, so it must not be modified.
+     */
+    public Object getExtra() {
+        return extra;
+    }
+
+    /**
+     * Returns the immutable set of features which this license entitles to
+     * use.
+     *
+     * @return The feature set - {@code null} is never returned.
+     */
+    public FeatureSet getFeatureSet() {
+        return featureSet;
+    }
+
+    /**
+     * Returns {@code true} if and only if this license entitles to use the
+     * given feature.
+     * This method runs in constant time and does not allocate any objects.
+     *
+     * @param  feature the feature identifier - may be {@code null}.
+     * @see    FeatureSet#isEntitled(String)
+     */
+    public boolean isEntitled(final String feature) {
+        return featureSet.isEntitled(feature);
+    }
+
+    /**
+     * Returns {@code true} if and only if the given time in milliseconds
+     * since the epoch is within the validity period of this license content.
+     * Note that both ends of the validity period are inclusive, just like
+     * {@link LicenseManager#validate(LicenseContent)} does it.
+     */
+    public boolean isValidAt(final long millis) {
+        return notBefore <= millis && millis <= notAfter;
+    }
+
+    /**
+     * Returns a new mutable license content with the properties of this
+     * snapshot.
+     */
+    public LicenseContent toLicenseContent() {
+        final LicenseContent content = new LicenseContent();
+        content.setHolder(holder);
+        content.setIssuer(issuer);
+        content.setSubject(subject);
+        content.setIssued(Long.MIN_VALUE != issued ? new Date(issued) : null);
+        content.setNotBefore(Long.MIN_VALUE != notBefore ? new Date(notBefore) : null);
+        content.setNotAfter(Long.MAX_VALUE != notAfter ? new Date(notAfter) : null);
+        content.setConsumerType(consumerType);
+        content.setConsumerAmount(consumerAmount);
+        content.setInfo(info);
+        content.setExtra(extra);
+        if (0 < featureSet.size())
+            content.setFeatures(featureSet.toArray());
+        return content;
+    }
+
+    /**
+     * Returns {@code true} if and only if {@code object} is an instance of
+     * {@code LicenseContentSnapshot} and their properties are considered
+     * equal.
+     */
+    public boolean equals(final Object object) {
+        if (this == object)
+            return true;
+        if (!(object instanceof LicenseContentSnapshot))
+            return false;
+        final LicenseContentSnapshot that = (LicenseContentSnapshot) object;
+        return this.hashCode == that.hashCode
+                && this.consumerAmount == that.consumerAmount
+                && this.issued == that.issued
+                && this.notBefore == that.notBefore
+                && this.notAfter == that.notAfter
+                && equals(this.consumerType, that.consumerType)
+                && equals(this.extra, that.extra)
+                && this.featureSet.equals(that.featureSet)
+                && equals(this.holder, that.holder)
+                && equals(this.info, that.info)
+                && equals(this.issuer, that.issuer)
+                && equals(this.subject, that.subject);
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == b || null != a && a.equals(b);
+    }
+
+    /**
+     * Returns the precomputed hash code which is consistent with
+     * {@link #equals(Object)}.
+     */
+    public int hashCode() {
+        return hashCode;
+    }
+
+    private int computeHashCode() {
+        int c = 17;
+        c = 37 * c + consumerAmount;
+        c = 37 * c + hash(consumerType);
+        c = 37 * c + hash(extra);
+        c = 37 * c + featureSet.hashCode();
+        c = 37 * c + hash(holder);
+        c = 37 * c + hash(info);
+        c = 37 * c + hash(issued);
+        c = 37 * c + hash(issuer);
+        c = 37 * c + hash(notAfter);
+        c = 37 * c + hash(notBefore);
+        c = 37 * c + hash(subject);
+        return c;
+    }
+
+    private static int hash(Object object) {
+        return null == object ? 0 : object.hashCode();
+    }
+
+    private static int hash(long value) {
+        return (int) (value ^ value >>> 32);
+    }
+}
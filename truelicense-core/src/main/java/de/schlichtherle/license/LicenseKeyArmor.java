@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Encodes license keys to and decodes them from an armored text format which
+ * can get passed through environment variables, configuration files, secrets
+ * or HTTP headers.
+ * The armored format looks like this:
+ * <pre>
+ * -----BEGIN LICENSE KEY-----
+ * bGljZW5zZSBrZXkgYnl0ZXMgaW4gQmFzZTY0IHdyYXBwZWQgYXQgNjQgY2hhcmFj
+ * dGVycw==
+ * =f+Ap
+ * -----END LICENSE KEY-----
+ * </pre>
+ * The body is the license key encoded in Base64 according to RFC 4648 and
+ * wrapped at {@link #DEFAULT_LINE_LENGTH} characters.
+ * The last line starting with {@code =} and followed by exactly four Base64
+ * characters is the optional CRC-24 checksum of the license key as defined
+ * for OpenPGP in RFC 4880, encoded in Base64.
+ * <p>
+ * When decoding, the {@link #BEGIN} and {@link #END} lines are optional and
+ * any whitespace is ignored, so that a license key may also be passed as a
+ * single line of Base64 characters, with or without a checksum.
+ * Any other deviation from the format results in a
+ * {@link LicenseKeyArmorException}.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseManager#createArmored(LicenseContent)
+ * @see LicenseManager#installArmored(CharSequence)
+ * @see LicenseManager#verifyArmored(CharSequence)
+ */
+public final class LicenseKeyArmor {
+
+    /** The first line of an armored license key. */
+    public static final String BEGIN = "-----BEGIN LICENSE KEY-----"; // NOI18N
+
+    /** The last line of an armored license key. */
+    public static final String END = "-----END LICENSE KEY-----"; // NOI18N
+
+    /** The default number of Base64 characters per line. */
+    public static final int DEFAULT_LINE_LENGTH = 64;
+
+    private static final byte[] LINE_SEPARATOR = { '\n' };
+
+    private static final int CRC24_INIT = 0xb704ce;
+    private static final int CRC24_POLY = 0x1864cfb;
+
+    /** The maximum size of a scratch buffer to keep for reuse. */
+    private static final int MAX_SCRATCH_SIZE = 8 * 1024;
+
+    /** Scratch buffers for the Base64 characters of the key to decode. */
+    private static final ThreadLocal<byte[]> scratch = new ThreadLocal<>();
+
+    /** You cannot instantiate this class. */
+    private LicenseKeyArmor() { }
+
+    /**
+     * Returns the armored text representation of the given license key with
+     * {@link #DEFAULT_LINE_LENGTH} Base64 characters per line.
+     *
+     * @param  key the license key - may <em>not</em> be {@code null}.
+     * @return The armored license key - {@code null} is never returned.
+     */
+    public static String armor(byte[] key) {
+        return armor(key, DEFAULT_LINE_LENGTH);
+    }
+
+    /**
+     * Returns the armored text representation of the given license key with
+     * the given number of Base64 characters per line.
+     *
+     * @param  key the license key - may <em>not</em> be {@code null}.
+     * @param  lineLength the maximum number of Base64 characters per line.
+     *         This gets rounded down to a multiple of four.
+     *         If this is less than four, the body is not wrapped.
+     * @return The armored license key - {@code null} is never returned.
+     */
+    public static String armor(final byte[] key, final int lineLength) {
+        final byte[] body = Base64
+                .getMimeEncoder(lineLength, LINE_SEPARATOR)
+                .encode(key);
+        final int crc = crc24(key);
+        final byte[] checksum = Base64.getEncoder().encode(new byte[] {
+            (byte) (crc >> 16), (byte) (crc >> 8), (byte) crc
+        });
+        final byte[] text = new byte[BEGIN.length() + 1
+                + body.length + 1
+                + 1 + checksum.length + 1
+                + END.length() + 1];
+        int off = 0;
+        off = put(BEGIN, text, off);
+        off = put(body, text, off);
+        text[off++] = '=';
+        off = put(checksum, text, off);
+        off = put(END, text, off);
+        assert off == text.length;
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    private static int put(final String line, final byte[] text, int off) {
+        for (int i = 0, l = line.length(); i < l; i++)
+            text[off++] = (byte) line.charAt(i);
+        text[off++] = '\n';
+        return off;
+    }
+
+    private static int put(final byte[] line, final byte[] text, int off) {
+        System.arraycopy(line, 0, text, off, line.length);
+        off += line.length;
+        text[off++] = '\n';
+        return off;
+    }
+
+    /**
+     * Decodes the given armored license key.
+     * The Base64 characters are collected in a reusable scratch buffer and
+     * decoded from there, so no intermediate strings are created.
+     *
+     * @param  text the armored license key - may <em>not</em> be
+     *         {@code null}.
+     * @return The license key - {@code null} is never returned.
+     * @throws LicenseKeyArmorException if the armored license key is
+     *         malformed or its checksum does not match.
+     */
+    public static byte[] unarmor(final CharSequence text)
+    throws LicenseKeyArmorException {
+        int start = indexOf(text, BEGIN, 0);
+        int end;
+        if (0 <= start) {
+            start += BEGIN.length();
+            end = indexOf(text, END, start);
+            if (0 > end)
+                throw new LicenseKeyArmorException(END);
+        } else {
+            start = 0;
+            end = text.length();
+        }
+
+        // The checksum is the last token if it's a '=' followed by exactly
+        // four Base64 characters.
+        // Any other '=' is padding, even if rewrapping the body has moved it
+        // to the start of a line.
+        int crc = -1;
+        int last = end;
+        while (start < last && Character.isWhitespace(text.charAt(last - 1)))
+            last--;
+        final int token = last - 5;
+        if (start <= token && '=' == text.charAt(token)
+                && (start == token
+                    || Character.isWhitespace(text.charAt(token - 1)))
+                && isBase64(text, token + 1, last)) {
+            crc = 0;
+            for (int i = token + 1; i < last; i++)
+                crc = crc << 6 | value(text.charAt(i));
+            end = token;
+        }
+
+        // Collect the Base64 characters of the body.
+        byte[] chars = scratch.get();
+        if (null == chars || chars.length < end - start) {
+            chars = new byte[end - start];
+            if (chars.length <= MAX_SCRATCH_SIZE)
+                scratch.set(chars);
+        }
+        int len = 0;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (Character.isWhitespace(c))
+                continue;
+            if (c > 0x7f)
+                throw new LicenseKeyArmorException(String.valueOf(c));
+            chars[len++] = (byte) c;
+        }
+
+        final byte[] key;
+        try {
+            final ByteBuffer buf = Base64.getDecoder()
+                    .decode(ByteBuffer.wrap(chars, 0, len));
+            key = buf.remaining() == buf.array().length
+                    ? buf.array()
+                    : Arrays.copyOf(buf.array(), buf.remaining());
+        } catch (IllegalArgumentException ex) {
+            throw new LicenseKeyArmorException(ex);
+        } finally {
+            Arrays.fill(chars, 0, len, (byte) 0);
+        }
+        if (0 <= crc && crc != crc24(key))
+            throw new LicenseKeyArmorException("CRC-24"); // NOI18N
+        return key;
+    }
+
+    private static boolean isBase64(
+            final CharSequence text,
+            final int from,
+            final int to) {
+        for (int i = from; i < to; i++) {
+            final char c = text.charAt(i);
+            if (!('A' <= c && c <= 'Z' || 'a' <= c && c <= 'z'
+                    || '0' <= c && c <= '9' || '+' == c || '/' == c))
+                return false;
+        }
+        return true;
+    }
+
+    private static int value(final char c) throws LicenseKeyArmorException {
+        if ('A' <= c && c <= 'Z')
+            return c - 'A';
+        if ('a' <= c && c <= 'z')
+            return c - 'a' + 26;
+        if ('0' <= c && c <= '9')
+            return c - '0' + 52;
+        if ('+' == c)
+            return 62;
+        if ('/' == c)
+            return 63;
+        throw new LicenseKeyArmorException(String.valueOf(c));
+    }
+
+    private static int indexOf(
+            final CharSequence text,
+            final String s,
+            final int from) {
+        final int l = s.length();
+        outer:
+        for (int i = from, max = text.length() - l; i <= max; i++) {
+            for (int j = 0; j < l; j++)
+                if (text.charAt(i + j) != s.charAt(j))
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    /** Returns the CRC-24 checksum of the given bytes as defined in RFC 4880. */
+    private static int crc24(final byte[] b) {
+        int crc = CRC24_INIT;
+        for (int i = 0; i < b.length; i++) {
+            crc ^= (b[i] & 0xff) << 16;
+            for (int j = 0; j < 8; j++) {
+                crc <<= 1;
+                if (0 != (crc & 0x1000000))
+                    crc ^= CRC24_POLY;
+            }
+        }
+        return crc & 0xffffff;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import de.schlichtherle.util.ObfuscatedString;
+import java.io.IOException;
+
+/**
+ * Thrown if an armored license key cannot get decoded because it is
+ * malformed or its checksum does not match.
+ * This is detected before any attempt is made to decrypt the license key.
+ *
+ * @author Christian Schlichtherle
+ * @see LicenseKeyArmor
+ */
+public class LicenseKeyArmorException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private static final String EXC_CORRUPT_LICENSE_KEY_ARMOR = new ObfuscatedString(new long[] {
+        0x7D79B2F785956225L, 0x4BF6EE9692AC6B4AL, 0xFC513E26FECEA338L,
+        0x20684AA79519851FL, 0xE71B8F7DE2C12CBAL}).toString(); /* => "exc.corruptLicenseKeyArmor" */
+
+    /**
+     * Constructs an instance of {@code LicenseKeyArmorException}
+     * with the given detail message.
+     */
+    public LicenseKeyArmorException(final String msg) {
+        super(msg);
+    }
+
+    /**
+     * Constructs an instance of {@code LicenseKeyArmorException}
+     * with the given cause.
+     */
+    public LicenseKeyArmorException(final Throwable cause) {
+        super(cause);
+    }
+
+    public String getLocalizedMessage() {
+        return Resources.getString(EXC_CORRUPT_LICENSE_KEY_ARMOR);
+    }
+}
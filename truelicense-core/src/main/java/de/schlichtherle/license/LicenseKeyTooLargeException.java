@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import de.schlichtherle.util.ObfuscatedString;
+import java.io.IOException;
+
+/**
+ * Thrown if a license key is to be loaded which is larger than
+ * {@link LicenseManager#MAX_LICENSE_KEY_SIZE}.
+ * This is detected before any attempt is made to decrypt the license key.
+ *
+ * @author Christian Schlichtherle
+ */
+public class LicenseKeyTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private static final String EXC_LICENSE_KEY_TOO_LARGE = new ObfuscatedString(new long[] {
+        0xFB2801279C7C027CL, 0xDE71EB2FBFDA7C81L, 0x4DADB06324DDCE9CL,
+        0x1DBCFA0B4D92899L}).toString(); /* => "exc.licenseKeyTooLarge" */
+
+    /** The maximum size of a license key in bytes. */
+    private final int maxSize;
+
+    /**
+     * Constructs an instance of {@code LicenseKeyTooLargeException}
+     * for the given maximum size of a license key.
+     *
+     * @param maxSize the maximum size of a license key in bytes.
+     */
+    public LicenseKeyTooLargeException(final int maxSize) {
+        super(Integer.toString(maxSize));
+        this.maxSize = maxSize;
+    }
+
+    /** Returns the maximum size of a license key in bytes. */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public String getLocalizedMessage() {
+        return Resources.getString(EXC_LICENSE_KEY_TOO_LARGE, Integer.valueOf(maxSize));
+    }
+}
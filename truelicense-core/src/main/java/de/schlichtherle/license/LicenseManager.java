@@ -5,10 +5,24 @@
 package de.schlichtherle.license;
 
 import de.schlichtherle.util.ObfuscatedString;
+import de.schlichtherle.xml.AtomicFileWriter;
 import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.PersistenceService;
 import java.io.*;
-import java.util.Calendar;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.prefs.Preferences;
 import javax.security.auth.x500.X500Principal;
 import javax.swing.filechooser.FileFilter;
@@ -22,6 +36,12 @@ import javax.swing.filechooser.FileFilter;
  * For signing, verifying and validating licenses, this class cooperates with
  * a {@link LicenseNotary}.
  * <p>
+ * The {@code storeAsync}, {@code installAsync} and {@code verifyAsync}
+ * methods run their blocking counterparts on the I/O
+ * {@link PersistenceService#getExecutor() executor} of the
+ * {@link PersistenceService}, so that issuing, installing and verifying
+ * license keys can overlap with other work of the calling thread.
+ * <p>
  * This class is thread-safe.
  *
  * @author Christian Schlichtherle
@@ -55,6 +75,16 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
         assert LICENSE_SUFFIX.equals(LICENSE_SUFFIX.toLowerCase()); // paranoid
     }
 
+    /**
+     * The maximum size of a license key in bytes, which is {@value}.
+     * Loading a larger license key fails with a
+     * {@link LicenseKeyTooLargeException}.
+     */
+    public static final int MAX_LICENSE_KEY_SIZE = 1024 * 1024;
+
+    /** The initial buffer size for loading a license key from a channel. */
+    private static final int KEY_BUFSIZE = 4 * 1024;
+
     /** => "CN=" */
     protected static final String CN = new ObfuscatedString(new long[] {
         0x636F59E1FF007F64L, 0xAC9CE58690A43DD0L
@@ -67,7 +97,7 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
     }).toString());
 
     /** => "User" */
-    private static final String USER = new ObfuscatedString(new long[] {
+    static final String USER = new ObfuscatedString(new long[] {
         0x9F89522C9F6F4A13L, 0xFFDB7A316241AC79L
     }).toString();
 
@@ -76,61 +106,10 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
         0xEC006BE1C1F75BD6L, 0x54D650CDD244774BL
     }).toString();
 
-    /** => "exc.invalidSubject" */
-    private static final String EXC_INVALID_SUBJECT = new ObfuscatedString(new long[] {
-        0x8029CDF4E32A76ECL, 0x56FA623D9AEE8C1L, 0x99E7882A708663ACL,
-        0x5888C0D72E548FF4L
-    }).toString();
-
-    /** => "exc.holderIsNull" */
-    private static final String EXC_HOLDER_IS_NULL = new ObfuscatedString(new long[] {
-        0x6339FEFCDFD84427L, 0x57A2FA0735E47CBEL, 0xED1D06E6EED72950L
-    }).toString();
-
-    /** => "exc.issuerIsNull" */
-    private static final String EXC_ISSUER_IS_NULL = new ObfuscatedString(new long[] {
-        0xD5E29AC879334756L, 0xF1F7421CD6A06536L, 0x5E086D6468FECBF2L
-    }).toString();
-
-    /** => "exc.issuedIsNull" */
-    private static final String EXC_ISSUED_IS_NULL = new ObfuscatedString(new long[] {
-        0xAB8FF89F2DA6C32CL, 0x2A089A9CA80D970EL, 0xCF15F8842FCCD9D5L
-    }).toString();
-
-    /** => "exc.licenseIsNotYetValid" */
-    private static final String EXC_LICENSE_IS_NOT_YET_VALID = new ObfuscatedString(new long[] {
-        0x4B6BB2804EE7DDB1L, 0xD0BB0A33A41543C5L, 0x5FCEC6DF3725CEE4L,
-        0xA165775BBD625344L
-    }).toString();
-
-    /** => "exc.licenseHasExpired" */
-    private static final String EXC_LICENSE_HAS_EXPIRED = new ObfuscatedString(new long[] {
-        0xDE2B2A7ACD6DA6DL, 0x9EE12DDECB3D4C0DL, 0xB3CF760B522E8688L,
-        0x316BD3E92C17CC40L
-    }).toString();
-
-    /** => "exc.consumerTypeIsNull" */
-    private static final String EXC_CONSUMER_TYPE_IS_NULL = new ObfuscatedString(new long[] {
-        0xD29019F7B1D95C66L, 0xE859C44ACC3EB2FEL, 0xF041027C9003B031L,
-        0x27E84AD8870D6063L
-    }).toString();
-
-    /** => "exc.consumerTypeIsNotUser" */
-    private static final String EXC_CONSUMER_TYPE_IS_NOT_USER = new ObfuscatedString(new long[] {
-        0xCE99D49CE98D1E47L, 0x7A3BA300A7DFCEABL, 0x2D2E4B624AD7C4E0L,
-        0x2C86A28A075E71C6L, 0x79BCB920E5FB351DL
-    }).toString();
-
-    /** => "exc.consumerAmountIsNotOne" */
-    private static final String EXC_CONSUMER_AMOUNT_IS_NOT_ONE = new ObfuscatedString(new long[] {
-        0x5F20CBB98126BB0AL, 0xE8BB696B25D24011L, 0x435CC3AA7263BAE7L,
-        0x9DA3066F501717E4L, 0x62FFA4899FBBA3F8L
-    }).toString();
-
-    /** => "exc.consumerAmountIsNotPositive" */
-    private static final String EXC_CONSUMER_AMOUNT_IS_NOT_POSITIVE = new ObfuscatedString(new long[] {
-        0xB14EB6259B4D7249L, 0xCD02F577511528D8L, 0x39B8CF1E258756DDL,
-        0x67488F05891DF916L, 0x4256DE0CFFF62DCAL
+    /** => "exc.licenseIsRevoked" */
+    private static final String EXC_LICENSE_IS_REVOKED = new ObfuscatedString(new long[] {
+        0x14C24AB362B535B0L, 0xCD83B53F53B55649L, 0x3451E7D4F36E0338L,
+        0xCE1170EF1DDF486EL
     }).toString();
 
     /** => "fileFilter.description" */
@@ -144,15 +123,53 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
         0xA4BCC907D9FD1290L, 0x614A0A9015D3D8DDL
     }).toString();
 
+    /** => "create" */
+    private static final String CREATE = new ObfuscatedString(new long[] {
+        0x63EA733709BCB41CL, 0x7BD6B0042CDF17DBL
+    }).toString();
+
+    /**
+     * Whether or not a subclass overrides
+     * {@link #create(LicenseContent, LicenseNotary)}.
+     * If this cannot get determined, it's assumed to be overridden.
+     */
+    private static final ClassValue<Boolean> CREATE_OVERRIDDEN
+            = new ClassValue<Boolean>() {
+        protected Boolean computeValue(final Class<?> type) {
+            for (Class<?> c = type; LicenseManager.class != c; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod(CREATE,
+                            LicenseContent.class, LicenseNotary.class);
+                    return Boolean.TRUE;
+                } catch (NoSuchMethodException ex) {
+                    // continue with superclass
+                } catch (SecurityException ex) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        }
+    };
+
     /** Returns midnight local time today. */
     protected static Date midnight() {
-        Calendar cal = Calendar.getInstance();
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-        
-        return cal.getTime();
+        return midnight(Clock.systemDefaultZone(), 0);
+    }
+
+    /**
+     * Returns midnight in the time zone of the given clock the given number
+     * of days after today according to the given clock.
+     *
+     * @param clock the clock
+     *        - may <em>not</em> be {@code null}.
+     * @param days the number of days to add to today - may be negative.
+     */
+    protected static Date midnight(final Clock clock, final int days) {
+        return new Date(LocalDate.now(clock)
+                .plusDays(days)
+                .atStartOfDay(clock.getZone())
+                .toInstant()
+                .toEpochMilli());
     }
 
     private LicenseParam param; // initialized by setLicenseParam() - should be accessed via getLicenseParam() only!
@@ -165,9 +182,42 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
 
     private PrivacyGuard guard; // lazy initialized
 
+    /** The metrics of the subject of the license configuration parameters. */
+    private volatile LicenseMetrics metrics = LicenseMetrics.NONE;
+
+    /** The compression stage for new license keys. */
+    private KeyCompression keyCompression = KeyCompression.GZIP;
+
+    /** The rules for validating license contents. */
+    private final LicenseValidatorChain validators = new LicenseValidatorChain();
+
+    /** The list of revoked license certificates. */
+    private volatile RevocationList revocationList = RevocationList.EMPTY;
+
+    /** The source of the current time. */
+    private volatile Clock clock = Clock.systemDefaultZone();
+
     /** The cached certificate of the current license key. */
     private GenericCertificate certificate; // lazy initialized
 
+    /** The content of the cached certificate. */
+    private LicenseContent content; // lazy initialized
+
+    /** The snapshot of the content of the cached certificate. */
+    private volatile LicenseContentSnapshot snapshot; // lazy initialized
+
+    /**
+     * The last time when validating the content of the cached certificate
+     * passes again or {@link Long#MIN_VALUE} if it needs to get validated.
+     */
+    private volatile long validUntil = Long.MIN_VALUE;
+
+    /**
+     * The number of cache hits in {@link #verify(LicenseNotary)} which have
+     * neither been timed nor counted in the metrics yet.
+     */
+    private int untimedHits;
+
     /** The time when the certificate was last set. */
     private long certificateTimeout; // lazy initialized
 
@@ -182,6 +232,8 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      * is called!
      */
     protected LicenseManager() {
+        for (LicenseValidator validator : StandardLicenseValidator.values())
+            validators.add(validator);
     }
 
     /**
@@ -196,6 +248,7 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      *         does not comply to the current policy.
      */
     public LicenseManager(LicenseParam param) {
+        this();
         setLicenseParam0(param);
     }
 
@@ -236,11 +289,111 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
         Policy.getCurrent().checkPwd(cipherParam.getKeyPwd());
 
         this.param = param;
+        metrics = LicenseMetrics.forSubject(param.getSubject());
         notary = null;
+        if (null != guard)
+            guard.setMetrics(metrics);
         setCertificate0(null);
         fileFilter = null;
     }
 
+    /**
+     * Returns the metrics of the subject of the license configuration
+     * parameters.
+     * All license managers for the same subject share the same metrics.
+     *
+     * @see LicenseMetrics#registerMXBean()
+     */
+    public LicenseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the compression stage which is applied when creating license
+     * keys.
+     * The default is {@link KeyCompression#GZIP}.
+     */
+    public synchronized KeyCompression getKeyCompression() {
+        return keyCompression;
+    }
+
+    /**
+     * Sets the compression stage which is applied when creating license
+     * keys.
+     * License keys are always accepted for installation or verification
+     * regardless of the compression stage they were created with.
+     *
+     * @param  keyCompression the compression stage
+     *         - may <em>not</em> be {@code null}.
+     */
+    public synchronized void setKeyCompression(
+            final KeyCompression keyCompression) {
+        if (null == keyCompression)
+            throw new NullPointerException();
+        this.keyCompression = keyCompression;
+        if (null != guard)
+            guard.setKeyCompression(keyCompression);
+    }
+
+    /**
+     * Returns the clock which provides the current time for initializing
+     * and validating license contents and for caching license certificates.
+     * The default is {@link Clock#systemDefaultZone()}.
+     */
+    public synchronized Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Sets the clock which provides the current time for initializing
+     * and validating license contents and for caching license certificates.
+     * This is useful for simulating the expiry of a license in tests and
+     * benchmarks.
+     * The time zone of the clock is used to compute midnight when
+     * initializing license contents.
+     * Setting the clock forces the content of the cached license certificate
+     * to get validated again on the next verification.
+     *
+     * @param  clock the clock
+     *         - may <em>not</em> be {@code null}.
+     */
+    public synchronized void setClock(final Clock clock) {
+        if (null == clock)
+            throw new NullPointerException();
+        validUntil = Long.MIN_VALUE;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the list of revoked license certificates.
+     * The default is {@link RevocationList#EMPTY}.
+     */
+    public RevocationList getRevocationList() {
+        return revocationList;
+    }
+
+    /**
+     * Replaces the list of revoked license certificates.
+     * Whenever a license key gets installed or verified, the fingerprint of
+     * its license certificate is looked up in this list.
+     * This forces the cached license certificate to get checked again on
+     * the next verification.
+     * <p>
+     * Note that a revocation list should be
+     * {@linkplain RevocationList#load(Path, LicenseNotary) loaded} with the
+     * same license notary which is used to verify license keys.
+     *
+     * @param  revocationList the list of revoked license certificates
+     *         - may <em>not</em> be {@code null}.
+     */
+    public synchronized void setRevocationList(
+            final RevocationList revocationList) {
+        if (null == revocationList)
+            throw new NullPointerException();
+        this.revocationList = revocationList;
+        validUntil = Long.MIN_VALUE;
+    }
+
     //
     // Methods for license contents.
     //
@@ -300,7 +453,181 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
             LicenseNotary notary,
             File keyFile)
     throws Exception {
-        storeLicenseKey(create(content, notary), keyFile);
+        final AtomicFileWriter writer = new AtomicFileWriter();
+        try {
+            store(content, notary, writer.newOutputStream(keyFile));
+            writer.commit();
+        } finally {
+            writer.abort(); // no-op if committed
+        }
+    }
+
+    /**
+     * Asynchronously initializes and validates the license content, creates a
+     * new signed license certificate for it and compresses, encrypts and
+     * stores it to the given file as a license key by calling
+     * {@link #store(LicenseContent, File)} on the I/O executor.
+     * Note that {@code content} must not be accessed until the returned
+     * stage has completed.
+     *
+     * @param  content the license content
+     *         - may <em>not</em> be {@code null}.
+     * @param  keyFile the file to save the license key to
+     *         - may <em>not</em> be {@code null}.
+     *         This should have a {@code LICENSE_SUFFIX}.
+     * @return A stage which completes when the license key has been stored
+     *         or completes exceptionally with the exception thrown by
+     *         {@code store(LicenseContent, File)}
+     *         - {@code null} is never returned.
+     * @see    PersistenceService#getExecutor()
+     */
+    public final CompletionStage<Void> storeAsync(
+            final LicenseContent content,
+            final File keyFile) {
+        if (null == content || null == keyFile)
+            throw new NullPointerException();
+        return PersistenceService.submit(
+                PersistenceService.getExecutor(),
+                new Callable<Void>() {
+                    public Void call() throws Exception {
+                        store(content, keyFile);
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Initializes and validates the license content, creates a new signed
+     * license certificate for it and compresses, encrypts and stores it to
+     * the given file as a license key as part of a group commit.
+     * The file remains unchanged until the given writer gets
+     * {@link AtomicFileWriter#commit() committed}, which allows to issue
+     * many license keys in bulk with a single commit.
+     * <p>
+     * As a side effect, the given license {@code content} is initialized
+     * with some reasonable defaults unless the respective properties have
+     * already been set.
+     *
+     * @param  content the license content
+     *         - may <em>not</em> be {@code null}.
+     * @param  keyFile the file to save the license key to
+     *         - may <em>not</em> be {@code null}.
+     *         This should have a {@code LICENSE_SUFFIX}.
+     * @param  writer the writer for the group commit
+     *         - may <em>not</em> be {@code null}.
+     * @throws Exception for various reasons. Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @see    #store(LicenseContent, File)
+     */
+    public final synchronized void store(
+            LicenseContent content,
+            File keyFile,
+            AtomicFileWriter writer)
+    throws Exception {
+        final OutputStream out = writer.newOutputStream(keyFile);
+        try {
+            store(content, getLicenseNotary(), out);
+        } catch (final Exception ex) {
+            writer.discard(out); // don't commit partial content
+            throw ex;
+        }
+    }
+
+    /**
+     * Initializes and validates the license content, creates a new signed
+     * license certificate for it and compresses, encrypts and streams it to
+     * the given channel as a license key.
+     * No intermediate byte array holding the entire license key is
+     * required.
+     * The channel is <em>always</em> closed (even if an exception is thrown).
+     * <p>
+     * As a side effect, the given license {@code content} is initialized
+     * with some reasonable defaults unless the respective properties have
+     * already been set.
+     *
+     * @param  content the license content
+     *         - may <em>not</em> be {@code null}.
+     * @param  keyChannel the channel to write the license key to
+     *         - may <em>not</em> be {@code null}.
+     * @throws Exception for various reasons. Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @see    #store(LicenseContent, LicenseNotary, OutputStream)
+     */
+    public final synchronized void store(
+            LicenseContent content,
+            WritableByteChannel keyChannel)
+    throws Exception {
+        store(content, getLicenseNotary(), Channels.newOutputStream(keyChannel));
+    }
+
+    /**
+     * Initializes and validates the license content, creates a new signed
+     * license certificate for it and compresses, encrypts and streams it to
+     * the given stream as a license key.
+     * The stream is <em>always</em> closed (even if an exception is thrown).
+     * <p>
+     * If a subclass overrides {@link #create(LicenseContent, LicenseNotary)},
+     * then the license key gets created by calling this method and written
+     * to the stream, so that all store methods observe the override.
+     * Otherwise, the license key gets streamed without an intermediate byte
+     * array.
+     * <p>
+     * As a side effect, the given license {@code content} is initialized
+     * with some reasonable defaults unless the respective properties have
+     * already been set.
+     *
+     * @param  content the license content
+     *         - may <em>not</em> be {@code null}.
+     * @param  notary the license notary used to sign the license key
+     *         - may <em>not</em> be {@code null}.
+     * @param  keyOut the unbuffered stream to write the license key to
+     *         - may <em>not</em> be {@code null}.
+     * @throws Exception for various reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @see    #initialize(LicenseContent)
+     * @see    #validate(LicenseContent)
+     */
+    protected synchronized void store(
+            final LicenseContent content,
+            final LicenseNotary notary,
+            final OutputStream keyOut)
+    throws Exception {
+        if (CREATE_OVERRIDDEN.get(getClass())) {
+            final byte[] key;
+            try {
+                key = create(content, notary);
+            } catch (final Exception ex) {
+                keyOut.close();
+                throw ex;
+            }
+            try {
+                keyOut.write(key);
+            } finally {
+                keyOut.close();
+            }
+            return;
+        }
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.CREATE);
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final GenericCertificate certificate;
+            try {
+                certificate = sign(content, notary);
+            } catch (final Exception ex) {
+                keyOut.close();
+                throw ex;
+            }
+            getPrivacyGuard().cert2key(certificate, keyOut);
+            ok = true;
+        } finally {
+            metrics.end(LicenseStage.CREATE, context, start, 0, ok);
+        }
     }
 
     /**
@@ -354,11 +681,55 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
     protected synchronized byte[] create(
             LicenseContent content,
             LicenseNotary notary)
+    throws Exception {
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.CREATE);
+        final long start = System.nanoTime();
+        byte[] key = null;
+        try {
+            return key = getPrivacyGuard().cert2key(sign(content, notary));
+        } finally {
+            metrics.end(LicenseStage.CREATE, context, start,
+                    null != key ? key.length : 0, null != key);
+        }
+    }
+
+    /**
+     * Initializes and validates the license content, creates a new signed
+     * license certificate for it and compresses, encrypts and returns it
+     * as an armored license key.
+     * <p>
+     * As a side effect, the given license {@code content} is initialized
+     * with some reasonable defaults unless the respective properties have
+     * already been set.
+     *
+     * @param  content the license content
+     *         - may <em>not</em> be {@code null}.
+     * @throws Exception for various reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @return The armored license key
+     *         - {@code null} is never returned.
+     * @see    LicenseKeyArmor
+     * @see    #create(LicenseContent)
+     */
+    public final synchronized String createArmored(LicenseContent content)
+    throws Exception {
+        return LicenseKeyArmor.armor(create(content, getLicenseNotary()));
+    }
+
+    /**
+     * Initializes and validates the license content and returns a new
+     * license certificate for it which has been signed by the given notary.
+     */
+    private GenericCertificate sign(
+            final LicenseContent content,
+            final LicenseNotary notary)
     throws Exception {
         initialize(content);
         validate(content);
-        final GenericCertificate certificate = notary.sign(content);
-        return getPrivacyGuard().cert2key(certificate);
+        return notary.sign(content);
     }
 
     /**
@@ -382,6 +753,127 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
         return install(keyFile, getLicenseNotary());
     }
 
+    /**
+     * Asynchronously loads, decrypts, decompresses, decodes and verifies the
+     * license key in {@code keyFile}, validates its license content and
+     * installs it as the current license key by calling
+     * {@link #install(File)} on the I/O executor.
+     *
+     * @param  keyFile the file to load the license key from
+     *         - may <em>not</em> be {@code null}.
+     * @return A stage which completes with a clone of the verified and
+     *         validated content of the license key or completes
+     *         exceptionally with the exception thrown by
+     *         {@code install(File)}
+     *         - {@code null} is never returned.
+     * @see    PersistenceService#getExecutor()
+     */
+    public final CompletionStage<LicenseContent> installAsync(
+            final File keyFile) {
+        if (null == keyFile)
+            throw new NullPointerException();
+        return PersistenceService.submit(
+                PersistenceService.getExecutor(),
+                new Callable<LicenseContent>() {
+                    public LicenseContent call() throws Exception {
+                        return install(keyFile);
+                    }
+                });
+    }
+
+    /**
+     * Loads, decrypts, decompresses, decodes and verifies the license key in
+     * the file {@code keyPath}, validates its license content and installs it
+     * as the current license key.
+     *
+     * @param  keyPath the file to load the license key from
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyTooLargeException if the file is larger than
+     *         {@link #MAX_LICENSE_KEY_SIZE}.
+     * @throws Exception for various reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @return A clone of the verified and validated content of the license key
+     *         - {@code null} is never returned.
+     * @see    #install(File)
+     */
+    public final synchronized LicenseContent install(Path keyPath)
+    throws Exception {
+        return install(loadLicenseKey(keyPath), getLicenseNotary());
+    }
+
+    /**
+     * Reads, decrypts, decompresses, decodes and verifies the license key
+     * from {@code keyChannel} until its end, validates its license content
+     * and installs it as the current license key.
+     * The channel is not closed.
+     *
+     * @param  keyChannel the blocking channel to read the license key from
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyTooLargeException if the channel provides more than
+     *         {@link #MAX_LICENSE_KEY_SIZE} bytes.
+     * @throws Exception for various reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @return A clone of the verified and validated content of the license key
+     *         - {@code null} is never returned.
+     * @see    #install(File)
+     */
+    public final synchronized LicenseContent install(ReadableByteChannel keyChannel)
+    throws Exception {
+        return install(loadLicenseKey(keyChannel), getLicenseNotary());
+    }
+
+    /**
+     * Decrypts, decompresses, decodes and verifies the license key in the
+     * remaining bytes of {@code key}, validates its license content and
+     * installs it as the current license key.
+     * On return, the position of the buffer is set to its limit.
+     *
+     * @param  key the buffer holding the license key
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyTooLargeException if the buffer has more than
+     *         {@link #MAX_LICENSE_KEY_SIZE} remaining bytes.
+     * @throws Exception for various reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @return A clone of the verified and validated content of the license key
+     *         - {@code null} is never returned.
+     * @see    #install(File)
+     */
+    public final synchronized LicenseContent install(ByteBuffer key)
+    throws Exception {
+        return install(toLicenseKey(key), getLicenseNotary());
+    }
+
+    /**
+     * Decodes, decrypts, decompresses, decodes and verifies the given armored
+     * license key, validates its license content and installs it as the
+     * current license key.
+     *
+     * @param  text the armored license key
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyArmorException if the armored license key is
+     *         malformed or its checksum does not match.
+     * @throws LicenseKeyTooLargeException if the armored license key is
+     *         longer than twice {@link #MAX_LICENSE_KEY_SIZE} characters.
+     * @throws Exception for various reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @return A clone of the verified and validated content of the license key
+     *         - {@code null} is never returned.
+     * @see    LicenseKeyArmor
+     * @see    #install(File)
+     */
+    public final synchronized LicenseContent installArmored(CharSequence text)
+    throws Exception {
+        return install(toLicenseKey(text), getLicenseNotary());
+    }
+
     /**
      * Loads, decrypts, decompresses, decodes and verifies the license key in
      * {@code keyFile}, validates its license content and installs it
@@ -427,14 +919,26 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
             final byte[] key,
             final LicenseNotary notary)
     throws Exception {
-        final GenericCertificate certificate = getPrivacyGuard().key2cert(key);
-        notary.verify(certificate);
-        final LicenseContent content = (LicenseContent) certificate.getContent();
-        validate(content);
-        setLicenseKey(key);
-        setCertificate(certificate);
-
-        return content;
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.INSTALL);
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final GenericCertificate certificate = getPrivacyGuard().key2cert(key);
+            notary.verify(certificate);
+            checkRevocation(certificate);
+            final LicenseContent content = decode(certificate);
+            validate(content);
+            setLicenseKey(key);
+            setCertificate(certificate);
+            setContent(certificate, content);
+            ok = true;
+
+            return content;
+        } finally {
+            metrics.end(LicenseStage.INSTALL, context, start,
+                    null != key ? key.length : 0, ok);
+        }
     }
 
     /**
@@ -454,6 +958,54 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
         return verify(getLicenseNotary());
     }
 
+    /**
+     * Asynchronously verifies the current license key by calling
+     * {@link #verify()} on the I/O executor.
+     *
+     * @return A stage which completes with a clone of the verified and
+     *         validated content of the license key or completes
+     *         exceptionally with the exception thrown by {@code verify()}
+     *         - {@code null} is never returned.
+     * @see    #verifyAsync(Executor)
+     * @see    PersistenceService#getExecutor()
+     */
+    public final CompletionStage<LicenseContent> verifyAsync() {
+        return verifyAsync(PersistenceService.getExecutor());
+    }
+
+    /**
+     * Asynchronously verifies the current license key by calling
+     * {@link #verify()} on the given executor.
+     * <p>
+     * An application may call this method at startup in order to move the
+     * cost of decrypting, decompressing, decoding and verifying the current
+     * license key - or of creating a free trial period license key, if this
+     * is an {@link de.schlichtherle.license.ftp.LicenseManager} - off its
+     * critical path.
+     * Because {@code verify()} is synchronized, a concurrent call waits for
+     * the background verification to complete and then returns its cached
+     * outcome.
+     *
+     * @param  executor the executor for the verification
+     *         - may <em>not</em> be {@code null}.
+     * @return A stage which completes with a clone of the verified and
+     *         validated content of the license key or completes
+     *         exceptionally with the exception thrown by {@code verify()}
+     *         - {@code null} is never returned.
+     */
+    public final CompletionStage<LicenseContent> verifyAsync(
+            final Executor executor) {
+        if (null == executor)
+            throw new NullPointerException();
+        return PersistenceService.submit(
+                executor,
+                new Callable<LicenseContent>() {
+                    public LicenseContent call() throws Exception {
+                        return verify();
+                    }
+                });
+    }
+
     /**
      * Decrypts, decompresses, decodes and verifies the current license key,
      * validates its license content and returns it.
@@ -471,21 +1023,143 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      */
     protected synchronized LicenseContent verify(final LicenseNotary notary)
     throws Exception {
+        if (clock.millis() <= validUntil) {
+            // Time and count only every 16th cache hit because this
+            // costs more than the cache hit itself.
+            if (15 > untimedHits && !LicenseMetrics.isListened()) {
+                untimedHits++;
+                return copyContent();
+            }
+            final LicenseMetrics metrics = this.metrics;
+            metrics.count(LicenseStage.VERIFY_CACHED, untimedHits);
+            untimedHits = 0;
+            final Object context = metrics.begin(LicenseStage.VERIFY_CACHED);
+            final long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                final LicenseContent copy = copyContent();
+                ok = true;
+                return copy;
+            } finally {
+                metrics.end(LicenseStage.VERIFY_CACHED, context, start, 0, ok);
+            }
+        }
+        return verify0(notary);
+    }
+
+    /**
+     * Verifies the current license key unless the content of the cached
+     * license certificate is known to be valid.
+     */
+    private LicenseContent verify0(final LicenseNotary notary)
+    throws Exception {
+        final LicenseMetrics metrics = this.metrics;
         GenericCertificate certificate = getCertificate();
-        if (null != certificate)
-            return (LicenseContent) certificate.getContent();
-
-        // Load license key from preferences, 
-        final byte[] key = getLicenseKey();
-        if (null == key)
-            throw new NoLicenseInstalledException(getLicenseParam().getSubject());
-        certificate = getPrivacyGuard().key2cert(key);
+        final LicenseStage stage = null != certificate
+                ? LicenseStage.VERIFY_CACHED
+                : LicenseStage.VERIFY;
+        final Object context = metrics.begin(stage);
+        final long start = System.nanoTime();
+        long bytes = 0;
+        boolean ok = false;
+        try {
+            if (null != certificate) {
+                if (null == content)
+                    content = decode(certificate);
+                checkRevocation(certificate);
+                validate(content);
+                validUntil = validUntil(content);
+                ok = true;
+                return copyContent();
+            }
+
+            // Load license key from preferences, 
+            final byte[] key = getLicenseKey();
+            if (null == key)
+                throw new NoLicenseInstalledException(getLicenseParam().getSubject());
+            bytes = key.length;
+            certificate = getPrivacyGuard().key2cert(key);
+            verifyInstalled(certificate, notary);
+            checkRevocation(certificate);
+            final LicenseContent content = decode(certificate);
+            validate(content);
+            setCertificate(certificate);
+            setContent(certificate, content);
+            ok = true;
+
+            return content;
+        } finally {
+            metrics.end(stage, context, start, bytes, ok);
+        }
+    }
+
+    /**
+     * Verifies the digital signature of the certificate of the current
+     * license key.
+     * This method is called by {@link #verify(LicenseNotary)} whenever the
+     * current license key needs to get decrypted, decompressed and decoded
+     * because there is no cached license certificate.
+     * The implementation in this class simply calls
+     * {@link LicenseNotary#verify(GenericCertificate) notary.verify(certificate)}.
+     * A subclass may override this method in order to accept license keys
+     * which have been signed with other keys, too.
+     *
+     * @param  certificate the certificate of the current license key
+     *         - may <em>not</em> be {@code null}.
+     * @param  notary the license notary used to verify the current license key
+     *         - may <em>not</em> be {@code null}.
+     * @throws Exception for various reasons.
+     */
+    protected synchronized void verifyInstalled(
+            final GenericCertificate certificate,
+            final LicenseNotary notary)
+    throws Exception {
         notary.verify(certificate);
-        final LicenseContent content = (LicenseContent) certificate.getContent();
-        validate(content);
-        setCertificate(certificate);
+    }
+
+    /**
+     * Decrypts, decompresses, decodes and verifies the current license key,
+     * validates its license content and returns an immutable snapshot of it.
+     * <p>
+     * The snapshot is cached along with the license certificate, so as long
+     * as the cached certificate is valid, this method returns the same
+     * snapshot again without decoding, copying or allocating anything.
+     * Until the next time when validating the license content could fail,
+     * this method doesn't even lock this license manager, so it boils down
+     * to reading the clock and comparing the result with a volatile field.
+     * This makes it suitable for reading license properties on a hot path.
+     *
+     * @throws NoLicenseInstalledException if no license key is installed.
+     * @throws Exception for any other reason.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @return An immutable snapshot of the verified and validated content of
+     *         the license key - {@code null} is never returned.
+     * @see    #verify()
+     */
+    public final LicenseContentSnapshot verifySnapshot() throws Exception {
+        // The validity time gets reset before the snapshot gets cleared, so
+        // if it hasn't changed meanwhile, the snapshot belongs to it.
+        final long validUntil = this.validUntil;
+        final LicenseContentSnapshot snapshot = this.snapshot;
+        if (null != snapshot
+                && clock.millis() <= validUntil
+                && validUntil == this.validUntil)
+            return snapshot;
+        return verifySnapshot0();
+    }
 
-        return content;
+    private synchronized LicenseContentSnapshot verifySnapshot0()
+    throws Exception {
+        final LicenseContent content = verify(getLicenseNotary());
+        LicenseContentSnapshot snapshot = this.snapshot;
+        if (null == snapshot) {
+            snapshot = content.freeze();
+            if (Long.MIN_VALUE != validUntil) // content is cached
+                this.snapshot = snapshot;
+        }
+        return snapshot;
     }
 
     /**
@@ -508,6 +1182,76 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
         return verify(key, getLicenseNotary());
     }
 
+    /**
+     * Decrypts, decompresses, decodes and verifies the license key in the
+     * remaining bytes of the given buffer, validates its license content and
+     * returns it.
+     * On return, the position of the buffer is set to its limit.
+     *
+     * @param  key the buffer holding the license key
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyTooLargeException if the buffer has more than
+     *         {@link #MAX_LICENSE_KEY_SIZE} remaining bytes.
+     * @throws Exception for various reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @return A clone of the verified and validated content of the license key
+     *         - {@code null} is never returned.
+     * @see    #verify(byte[])
+     */
+    public final synchronized LicenseContent verify(ByteBuffer key)
+    throws Exception {
+        return verify(toLicenseKey(key), getLicenseNotary());
+    }
+
+    /**
+     * Reads, decrypts, decompresses, decodes and verifies the license key
+     * from the given channel until its end, validates its license content
+     * and returns it.
+     * The channel is not closed.
+     *
+     * @param  keyChannel the blocking channel to read the license key from
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyTooLargeException if the channel provides more than
+     *         {@link #MAX_LICENSE_KEY_SIZE} bytes.
+     * @throws Exception for various reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @return A clone of the verified and validated content of the license key
+     *         - {@code null} is never returned.
+     * @see    #verify(byte[])
+     */
+    public final synchronized LicenseContent verify(ReadableByteChannel keyChannel)
+    throws Exception {
+        return verify(loadLicenseKey(keyChannel), getLicenseNotary());
+    }
+
+    /**
+     * Decodes, decrypts, decompresses, decodes and verifies the given armored
+     * license key, validates its license content and returns it.
+     *
+     * @param  text the armored license key
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyArmorException if the armored license key is
+     *         malformed or its checksum does not match.
+     * @throws LicenseKeyTooLargeException if the armored license key is
+     *         longer than twice {@link #MAX_LICENSE_KEY_SIZE} characters.
+     * @throws Exception for various reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     * @return A clone of the verified and validated content of the license key
+     *         - {@code null} is never returned.
+     * @see    LicenseKeyArmor
+     * @see    #verify(byte[])
+     */
+    public final synchronized LicenseContent verifyArmored(CharSequence text)
+    throws Exception {
+        return verify(toLicenseKey(text), getLicenseNotary());
+    }
+
     /**
      * Decrypts, decompresses, decodes and verifies the given license key,
      * validates its license content and returns it.
@@ -528,12 +1272,40 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
             final byte[] key,
             final LicenseNotary notary)
     throws Exception {
-        final GenericCertificate certificate = getPrivacyGuard().key2cert(key);
-        notary.verify(certificate);
-        final LicenseContent content = (LicenseContent) certificate.getContent();
-        validate(content);
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.VERIFY);
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final GenericCertificate certificate = getPrivacyGuard().key2cert(key);
+            notary.verify(certificate);
+            checkRevocation(certificate);
+            final LicenseContent content = decode(certificate);
+            validate(content);
+            ok = true;
+
+            return content;
+        } finally {
+            metrics.end(LicenseStage.VERIFY, context, start,
+                    null != key ? key.length : 0, ok);
+        }
+    }
 
-        return content;
+    /** Decodes the content of the given verified license certificate. */
+    private LicenseContent decode(final GenericCertificate certificate)
+    throws Exception {
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.DECODE_CONTENT);
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final LicenseContent content
+                    = (LicenseContent) certificate.getContent();
+            ok = true;
+            return content;
+        } finally {
+            metrics.end(LicenseStage.DECODE_CONTENT, context, start, 0, ok);
+        }
     }
 
     /**
@@ -569,10 +1341,10 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
         if (null == content.getIssuer())
             content.setIssuer(new X500Principal(
                     CN + getLicenseParam().getSubject()));
-        if (null == content.getIssued())
-            content.setIssued(new Date());
-        if (null == content.getNotBefore())
-            content.setNotBefore(midnight());
+        if (null == content.issued())
+            content.setIssued(new Date(clock.millis()));
+        if (null == content.notBefore())
+            content.setNotBefore(midnight(clock, 0));
     }
 
     /**
@@ -580,8 +1352,13 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      * This method is called whenever a license certificate is created,
      * installed or verified.
      * <p>
-     * Validation consists of the following plausability checks for the
-     * properties of this class:
+     * Validation takes an immutable snapshot of the license content, which
+     * is reused for the content of the cached license certificate, and
+     * runs the registered {@linkplain #addLicenseValidator license validators}
+     * on it in ascending order of their cost until the first of them fails.
+     * By default, the {@linkplain StandardLicenseValidator standard validators}
+     * are registered, which apply the following plausability checks for the
+     * properties of the license content:
      * <p>
      * <ul>
      * <li>'subject' must match the subject required by the application
@@ -589,7 +1366,8 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      * <li>'holder', 'issuer' and 'issued' must be provided (i.e. not
      *     {@code null}).
      * <li>If 'notBefore' or 'notAfter' are provided, the current date and
-     *     time must match their restrictions.
+     *     time according to the {@linkplain #getClock() clock} must match
+     *     their restrictions.
      * <li>'consumerType' must be provided and 'consumerAmount' must be
      *     positive.
      *     If a user preference node is provided in the license parameters,
@@ -597,8 +1375,12 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      *     ignored) and 'consumerAmount' must equal 1.
      * </ul>
      * <p>
-     * If you need more or less rigid restrictions, you should override this
-     * method in a subclass.
+     * When the content of the cached license certificate has passed this
+     * method, it's not called again until the content expires or the cache
+     * times out, whatever comes first, so the outcome of this method must
+     * depend on the current time and the given content only.
+     * If you need more or less rigid restrictions, you should add or remove
+     * license validators or override this method in a subclass.
      * 
      * @param  content the license content
      *         - may <em>not</em> be {@code null}.
@@ -611,37 +1393,86 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      */
     protected synchronized void validate(final LicenseContent content)
     throws LicenseContentException {
-        final LicenseParam param = getLicenseParam();
-        if (!param.getSubject().equals(content.getSubject()))
-            throw new LicenseContentException(EXC_INVALID_SUBJECT);
-        if (null == content.getHolder())
-            throw new LicenseContentException(EXC_HOLDER_IS_NULL);
-        if (null == content.getIssuer())
-            throw new LicenseContentException(EXC_ISSUER_IS_NULL);
-        if (null == content.getIssued())
-            throw new LicenseContentException(EXC_ISSUED_IS_NULL);
-        final Date now = new Date();
-        final Date notBefore = content.getNotBefore();
-        if (null != notBefore && now.before(notBefore))
-            throw new LicenseContentException(EXC_LICENSE_IS_NOT_YET_VALID);
-        final Date notAfter = content.getNotAfter();
-        if (null != notAfter && now.after(notAfter))
-            throw new LicenseContentException(EXC_LICENSE_HAS_EXPIRED);
-        final String consumerType = content.getConsumerType();
-        if (null == consumerType)
-            throw new LicenseContentException(EXC_CONSUMER_TYPE_IS_NULL);
-        final Preferences prefs = param.getPreferences();
-        if (null != prefs && prefs.isUserNode()) {
-            if (!USER.equalsIgnoreCase(consumerType))
-                throw new LicenseContentException(EXC_CONSUMER_TYPE_IS_NOT_USER);
-            if (1 != content.getConsumerAmount())
-                throw new LicenseContentException(EXC_CONSUMER_AMOUNT_IS_NOT_ONE);
-        } else {
-            if (0 >= content.getConsumerAmount())
-                throw new LicenseContentException(EXC_CONSUMER_AMOUNT_IS_NOT_POSITIVE);
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.VALIDATE);
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            validators.validate(getLicenseParam(), freeze(content), clock.millis());
+            ok = true;
+        } finally {
+            metrics.end(LicenseStage.VALIDATE, context, start, 0, ok);
         }
     }
 
+    /**
+     * Returns an immutable snapshot of the given license content.
+     * For the content of the cached certificate, the snapshot gets taken
+     * only once and cached along with it, so that validating it again
+     * doesn't allocate anything.
+     */
+    private LicenseContentSnapshot freeze(final LicenseContent content) {
+        if (content != this.content)
+            return content.freeze();
+        LicenseContentSnapshot snapshot = this.snapshot;
+        if (null == snapshot)
+            this.snapshot = snapshot = content.freeze();
+        return snapshot;
+    }
+
+    /**
+     * Registers the given license validator, so that it runs after all
+     * registered validators with the same or a lower cost whenever a license
+     * content gets validated.
+     * This forces the content of the cached license certificate to get
+     * validated again on the next verification.
+     *
+     * @param  validator the license validator
+     *         - may <em>not</em> be {@code null}.
+     * @see    #validate(LicenseContent)
+     */
+    public synchronized void addLicenseValidator(
+            final LicenseValidator validator) {
+        validators.add(validator);
+        validUntil = Long.MIN_VALUE;
+    }
+
+    /**
+     * Unregisters the given license validator.
+     * This forces the content of the cached license certificate to get
+     * validated again on the next verification.
+     * <p>
+     * This method is protected so that only a subclass can remove a rule,
+     * e.g. one of the {@linkplain StandardLicenseValidator standard validators}.
+     *
+     * @param  validator the license validator
+     *         - may be {@code null}.
+     * @return {@code true} if and only if the validator has been registered.
+     * @see    StandardLicenseValidator
+     */
+    protected synchronized boolean removeLicenseValidator(
+            final LicenseValidator validator) {
+        final boolean removed = validators.remove(validator);
+        validUntil = Long.MIN_VALUE;
+        return removed;
+    }
+
+    /**
+     * Returns a new array with the registered license validators in the
+     * order of their invocation.
+     */
+    public LicenseValidator[] getLicenseValidators() {
+        return validators.getValidators();
+    }
+
+    /**
+     * Returns a new array with the invocation statistics of the registered
+     * license validators in the order of their invocation.
+     */
+    public LicenseValidatorStatistics[] getLicenseValidatorStatistics() {
+        return validators.getStatistics();
+    }
+
     //
     // Methods for license certificates.
     //
@@ -653,7 +1484,7 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      * or a timeout has occured.
      */
     protected synchronized GenericCertificate getCertificate() {
-        return System.currentTimeMillis() < certificateTimeout
+        return clock.millis() < certificateTimeout
                 ? certificate
                 : null;
     }
@@ -669,11 +1500,69 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
     }
 
     private void setCertificate0(GenericCertificate certificate) {
+        validUntil = Long.MIN_VALUE;
+        content = null;
+        snapshot = null;
         certificateTimeout = null != (this.certificate = certificate)
-                ? System.currentTimeMillis() + TIMEOUT
+                ? clock.millis() + TIMEOUT
                 : 0;
     }
 
+    /**
+     * Caches a copy of the given validated content of the given license
+     * certificate if it's still the cached certificate, so that the next
+     * verification doesn't need to decode and validate it again.
+     * Does nothing if the content cannot get copied safely.
+     */
+    private void setContent(
+            final GenericCertificate certificate,
+            final LicenseContent content) {
+        if (certificate != this.certificate)
+            return;
+        final LicenseContent copy = content.copy();
+        if (null == copy)
+            return;
+        this.content = copy;
+        validUntil = validUntil(copy);
+    }
+
+    /**
+     * Returns a copy of the content of the cached certificate or decodes it
+     * again if it cannot get copied safely, so that the caller cannot modify
+     * the cached content.
+     */
+    private LicenseContent copyContent() throws Exception {
+        final LicenseContent copy = content.copy();
+        return null != copy ? copy : decode(certificate);
+    }
+
+    /**
+     * Checks that the given license certificate is not on the revocation
+     * list.
+     *
+     * @throws LicenseContentException if the license certificate has been
+     *         revoked.
+     */
+    private void checkRevocation(final GenericCertificate certificate)
+    throws LicenseContentException {
+        final RevocationList revocationList = this.revocationList;
+        if (0 != revocationList.size() && revocationList.isRevoked(certificate))
+            throw new LicenseContentException(EXC_LICENSE_IS_REVOKED);
+    }
+
+    /**
+     * Returns the last time when validating the given validated content of
+     * the cached certificate would pass again, i.e. the time when its
+     * {@code notAfter} property has passed or the cache times out, whatever
+     * comes first.
+     * The {@code notBefore} property has passed already.
+     */
+    private long validUntil(final LicenseContent content) {
+        final long timeout = certificateTimeout - 1;
+        final Date notAfter = content.notAfter();
+        return null != notAfter ? Math.min(notAfter.getTime(), timeout) : timeout;
+    }
+
     //
     // Methods for license keys.
     // Note that in contrast to the methods of the privacy guard,
@@ -684,7 +1573,19 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      * Returns the current license key.
      */
     protected synchronized byte[] getLicenseKey() {
-        return getLicenseParam().getPreferences().getByteArray(PREFERENCES_KEY, null);
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.LOAD_KEY);
+        final long start = System.nanoTime();
+        byte[] key = null;
+        boolean ok = false;
+        try {
+            key = getLicenseParam().getPreferences().getByteArray(PREFERENCES_KEY, null);
+            ok = true;
+            return key;
+        } finally {
+            metrics.end(LicenseStage.LOAD_KEY, context, start,
+                    null != key ? key.length : 0, ok);
+        }
     }
 
     /**
@@ -693,55 +1594,152 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      * uninstalled (but the cached license certificate is not cleared).
      */
     protected synchronized void setLicenseKey(final byte[] key) {
-        final Preferences prefs = getLicenseParam().getPreferences();
-        if (null != key)
-            prefs.putByteArray(PREFERENCES_KEY, key);
-        else
-            prefs.remove(PREFERENCES_KEY);
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.STORE_KEY);
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final Preferences prefs = getLicenseParam().getPreferences();
+            if (null != key)
+                prefs.putByteArray(PREFERENCES_KEY, key);
+            else
+                prefs.remove(PREFERENCES_KEY);
+            ok = true;
+        } finally {
+            metrics.end(LicenseStage.STORE_KEY, context, start,
+                    null != key ? key.length : 0, ok);
+        }
     }
 
     /**
      * Stores the given license key to the given file.
+     * The file is written atomically and durably, i.e. it either holds the
+     * complete old or the complete new license key, even after a crash.
      * 
      * @param key the license key
      *        - may <em>not</em> be {@code null}.
      * @param keyFile the file to save the license key to
      *        - may <em>not</em> be {@code null}.
      *        This should have a {@code LICENSE_SUFFIX}.
+     * @see   AtomicFileWriter
      */
     protected static void storeLicenseKey(
             final byte[] key,
             final File keyFile)
     throws IOException {
-        final OutputStream out = new FileOutputStream(keyFile);
+        final AtomicFileWriter writer = new AtomicFileWriter();
         try {
-            out.write(key);
+            final OutputStream out = writer.newOutputStream(keyFile);
+            try {
+                out.write(key);
+            } finally {
+                out.close();
+            }
+            writer.commit();
         } finally {
-            try { out.close(); }
-            catch (IOException weDontCare) { }
+            writer.abort(); // no-op if committed
         }
     }
 
     /**
-     * Loads and returns the first megabyte of content from {@code keyFile}
+     * Loads and returns the entire content of {@code keyFile}
      * as license key in a newly created byte array.
      * 
-     * @param keyFile the file holding the license key
-     *        - may <em>not</em> be {@code null}.
+     * @param  keyFile the file holding the license key
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyTooLargeException if the file is larger than
+     *         {@link #MAX_LICENSE_KEY_SIZE}.
+     * @throws EOFException if the file gets truncated while reading it.
+     * @see    #loadLicenseKey(Path)
      */
     protected static byte[] loadLicenseKey(final File keyFile)
     throws IOException {
-        // Allow max 1MB size files and let the verifier detect a partial read
-        final int size = Math.min((int) keyFile.length(), 1024 * 1024);
-        final byte[] b = new byte[size];
-        final InputStream in = new FileInputStream(keyFile);
+        return loadLicenseKey(keyFile.toPath());
+    }
+
+    /**
+     * Loads and returns the entire content of the file {@code keyPath}
+     * as license key in a newly created byte array.
+     * The size of the file is checked before reading it and the file is
+     * read until the array is full, so that a partial read never gets
+     * decrypted.
+     * 
+     * @param  keyPath the file holding the license key
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyTooLargeException if the file is larger than
+     *         {@link #MAX_LICENSE_KEY_SIZE}.
+     * @throws EOFException if the file gets truncated while reading it.
+     */
+    protected static byte[] loadLicenseKey(final Path keyPath)
+    throws IOException {
+        final FileChannel channel = FileChannel.open(keyPath,
+                StandardOpenOption.READ);
         try {
-            // Let the verifier detect a partial read as an error
-            in.read(b);
+            final long size = channel.size();
+            if (MAX_LICENSE_KEY_SIZE < size)
+                throw new LicenseKeyTooLargeException(MAX_LICENSE_KEY_SIZE);
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining())
+                if (0 > channel.read(buffer))
+                    throw new EOFException();
+            return buffer.array();
         } finally {
-            in.close();
+            channel.close();
         }
-        return b;
+    }
+
+    /**
+     * Reads and returns the entire content of the given blocking channel
+     * until its end as license key in a newly created byte array.
+     * The channel is not closed.
+     * 
+     * @param  keyChannel the blocking channel providing the license key
+     *         - may <em>not</em> be {@code null}.
+     * @throws LicenseKeyTooLargeException if the channel provides more than
+     *         {@link #MAX_LICENSE_KEY_SIZE} bytes.
+     */
+    protected static byte[] loadLicenseKey(final ReadableByteChannel keyChannel)
+    throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(KEY_BUFSIZE);
+        while (0 <= keyChannel.read(buffer)) {
+            if (buffer.hasRemaining())
+                continue;
+            // Allow to read one more byte than the maximum in order to detect
+            // an oversized license key.
+            if (MAX_LICENSE_KEY_SIZE < buffer.position())
+                throw new LicenseKeyTooLargeException(MAX_LICENSE_KEY_SIZE);
+            buffer.flip();
+            buffer = ByteBuffer
+                    .allocate((int) Math.min(2L * buffer.capacity(),
+                                             MAX_LICENSE_KEY_SIZE + 1L))
+                    .put(buffer);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Returns the remaining bytes of the given buffer as license key in a
+     * newly created byte array.
+     * On return, the position of the buffer is set to its limit.
+     */
+    private static byte[] toLicenseKey(final ByteBuffer buffer)
+    throws LicenseKeyTooLargeException {
+        if (MAX_LICENSE_KEY_SIZE < buffer.remaining())
+            throw new LicenseKeyTooLargeException(MAX_LICENSE_KEY_SIZE);
+        final byte[] key = new byte[buffer.remaining()];
+        buffer.get(key);
+        return key;
+    }
+
+    /**
+     * Decodes the given armored license key.
+     * The length of the text is checked before decoding it.
+     */
+    private static byte[] toLicenseKey(final CharSequence text)
+    throws IOException {
+        if (2L * MAX_LICENSE_KEY_SIZE < text.length())
+            throw new LicenseKeyTooLargeException(MAX_LICENSE_KEY_SIZE);
+        return LicenseKeyArmor.unarmor(text);
     }
 
     //
@@ -754,8 +1752,10 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      * - {@code null} is never returned.
      */
     protected synchronized LicenseNotary getLicenseNotary() {
-        if (null == notary)
+        if (null == notary) {
             notary = new LicenseNotary(getLicenseParam().getKeyStoreParam());
+            notary.setMetrics(metrics);
+        }
         return notary;
     }
 
@@ -765,8 +1765,11 @@ public class LicenseManager implements LicenseCreator, LicenseVerifier {
      * - {@code null} is never returned.
      */
     protected synchronized PrivacyGuard getPrivacyGuard() {
-        if (null == guard)
+        if (null == guard) {
             guard = new PrivacyGuard(getLicenseParam().getCipherParam());
+            guard.setKeyCompression(keyCompression);
+            guard.setMetrics(metrics);
+        }
         return guard;
     }
 
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+/**
+ * The management interface for the {@link LicenseMetrics} of a licensing
+ * subject.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseMetrics#registerMXBean()
+ */
+public interface LicenseManagerMXBean {
+
+    /** Returns the licensing subject. */
+    String getSubject();
+
+    /**
+     * Returns the statistics of all stages which have been recorded at
+     * least once in the order of their declaration.
+     */
+    LicenseStageStatistics[] getStageStatistics();
+
+    /** Clears the statistics of all stages. */
+    void reset();
+}
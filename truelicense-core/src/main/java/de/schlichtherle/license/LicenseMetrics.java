@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records the count, failures, processed bytes and a latency histogram for
+ * each {@link LicenseStage} of a licensing subject.
+ * All license managers for the same subject share the same instance, which
+ * they pass on to their {@link LicenseNotary} and {@link PrivacyGuard}.
+ * The instance is retained only as long as any license manager uses it or
+ * it's registered as an MXBean - see {@link #forSubject(String)}.
+ * <p>
+ * Recording a stage costs two calls to {@link System#nanoTime()} and a few
+ * uncontended atomic increments, so metrics are always on.
+ * Only cache hits of {@link LicenseManager#verify()} are so cheap that
+ * each license manager times just every 16th of them and counts them in
+ * batches unless a listener is installed.
+ * To view them in a JMX console, call {@link #registerMXBean()}.
+ * To forward them to other metrics or tracing systems, call
+ * {@link #addListener(LicenseMetricsListener)}.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseManager#getMetrics()
+ */
+public final class LicenseMetrics implements LicenseManagerMXBean {
+
+    private static final String OBJECT_NAME_PREFIX
+            = "de.schlichtherle.license:type=LicenseManager,subject="; // NOI18N
+
+    private static final LicenseStage[] STAGES = LicenseStage.values();
+
+    /** The metrics which don't record anything. */
+    static final LicenseMetrics NONE = new LicenseMetrics(null);
+
+    /**
+     * The metrics by subject, which are weakly referenced so that they don't
+     * outlive their license managers.
+     */
+    private static final ConcurrentMap<String, MetricsReference> metrics
+            = new ConcurrentHashMap<String, MetricsReference>();
+
+    private static final ReferenceQueue<LicenseMetrics> collected
+            = new ReferenceQueue<LicenseMetrics>();
+
+    private static final LicenseMetricsListener[] NO_LISTENERS
+            = new LicenseMetricsListener[0];
+
+    /** The listeners - copied on write. */
+    private static volatile LicenseMetricsListener[] listeners = NO_LISTENERS;
+
+    private final String subject;
+    private final Stage[] stages;
+
+    private LicenseMetrics(final String subject) {
+        this.subject = subject;
+        this.stages = new Stage[STAGES.length];
+        if (null != subject)
+            for (int i = 0; i < STAGES.length; i++)
+                stages[i] = new Stage(STAGES[i]);
+    }
+
+    /**
+     * Returns the metrics for the given licensing subject.
+     * The metrics are only weakly referenced by this class:
+     * Once no license manager uses them and they are not
+     * {@linkplain #registerMXBean() registered} as an MXBean, they may get
+     * garbage collected, so that a subsequent call returns new metrics
+     * starting from zero.
+     * This prevents the metrics of short-lived subjects, e.g. of the tenants
+     * of a server, from being retained for the lifetime of the JVM.
+     *
+     * @param subject the licensing subject
+     *        - may <em>not</em> be {@code null}.
+     */
+    public static LicenseMetrics forSubject(final String subject) {
+        if (null == subject)
+            throw new NullPointerException();
+        expunge();
+        while (true) {
+            final MetricsReference ref = metrics.get(subject);
+            final LicenseMetrics m = null != ref ? ref.get() : null;
+            if (null != m)
+                return m;
+            final LicenseMetrics n = new LicenseMetrics(subject);
+            final MetricsReference nref = new MetricsReference(n);
+            if (null == ref
+                    ? null == metrics.putIfAbsent(subject, nref)
+                    : metrics.replace(subject, ref, nref))
+                return n;
+        }
+    }
+
+    /** Removes the entries of garbage collected metrics. */
+    private static void expunge() {
+        for (Reference<? extends LicenseMetrics> ref;
+                null != (ref = collected.poll()); ) {
+            final MetricsReference mref = (MetricsReference) ref;
+            metrics.remove(mref.subject, mref);
+        }
+    }
+
+    /**
+     * Returns the installed listeners for the stages of all licensing
+     * subjects in the order they have been added.
+     *
+     * @return A new array - {@code null} is never returned.
+     */
+    public static LicenseMetricsListener[] getListeners() {
+        return listeners.clone();
+    }
+
+    /**
+     * Adds the given listener for the stages of all licensing subjects.
+     * If the listener is already installed, this method does nothing.
+     * A stage which has already begun is not reported to the listener.
+     *
+     * @param listener the listener - may <em>not</em> be {@code null}.
+     */
+    public static synchronized void addListener(
+            final LicenseMetricsListener listener) {
+        if (null == listener)
+            throw new NullPointerException();
+        final LicenseMetricsListener[] l = listeners;
+        for (final LicenseMetricsListener e : l)
+            if (e == listener)
+                return;
+        final LicenseMetricsListener[] n = Arrays.copyOf(l, l.length + 1);
+        n[l.length] = listener;
+        listeners = n;
+    }
+
+    /**
+     * Removes the given listener for the stages of all licensing subjects.
+     * If the listener is not installed, this method does nothing.
+     * A stage which has already begun is still reported to the listener
+     * when it ends.
+     *
+     * @param listener the listener - may be {@code null}.
+     */
+    public static synchronized void removeListener(
+            final LicenseMetricsListener listener) {
+        final LicenseMetricsListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) {
+            if (l[i] == listener) {
+                if (1 == l.length) {
+                    listeners = NO_LISTENERS;
+                } else {
+                    final LicenseMetricsListener[] n
+                            = new LicenseMetricsListener[l.length - 1];
+                    System.arraycopy(l, 0, n, 0, i);
+                    System.arraycopy(l, i + 1, n, i, n.length - i);
+                    listeners = n;
+                }
+                return;
+            }
+        }
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public LicenseStageStatistics[] getStageStatistics() {
+        final List<LicenseStageStatistics> list
+                = new ArrayList<LicenseStageStatistics>(stages.length);
+        for (final Stage stage : stages)
+            if (null != stage && 0 != stage.count.sum())
+                list.add(stage.getStatistics());
+        return list.toArray(new LicenseStageStatistics[list.size()]);
+    }
+
+    /**
+     * Returns the statistics of the given stage.
+     *
+     * @param stage the stage - may <em>not</em> be {@code null}.
+     */
+    public LicenseStageStatistics getStageStatistics(final LicenseStage stage) {
+        final Stage s = stages[stage.ordinal()];
+        if (null == s)
+            throw new IllegalStateException();
+        return s.getStatistics();
+    }
+
+    public void reset() {
+        for (final Stage stage : stages)
+            if (null != stage)
+                stage.reset();
+    }
+
+    /**
+     * Registers these metrics as a {@link LicenseManagerMXBean} with the
+     * platform MBean server under the name
+     * {@code de.schlichtherle.license:type=LicenseManager,subject=<subject>},
+     * where the subject is quoted.
+     * If the MXBean is already registered, this method does nothing.
+     *
+     * @return The object name of the MXBean.
+     * @throws JMException if the MXBean cannot get registered.
+     */
+    public ObjectName registerMXBean() throws JMException {
+        final ObjectName name = getObjectName();
+        try {
+            getMBeanServer().registerMBean(this, name);
+        } catch (final InstanceAlreadyExistsException alreadyRegistered) {
+        }
+        return name;
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server.
+     * If the MXBean is not registered, this method does nothing.
+     *
+     * @throws JMException if the MXBean cannot get unregistered.
+     */
+    public void unregisterMXBean() throws JMException {
+        try {
+            getMBeanServer().unregisterMBean(getObjectName());
+        } catch (final InstanceNotFoundException notRegistered) {
+        }
+    }
+
+    private ObjectName getObjectName() throws JMException {
+        if (null == subject)
+            throw new IllegalStateException();
+        return new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(subject));
+    }
+
+    private static MBeanServer getMBeanServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    /**
+     * Notifies the listeners that the given stage begins.
+     *
+     * @return The object to pass to
+     *         {@link #end(LicenseStage, Object, long, long, boolean)}:
+     *         {@code null} if no listener is installed or else an array
+     *         holding the installed listeners followed by the objects
+     *         returned by them.
+     */
+    Object begin(final LicenseStage stage) {
+        final LicenseMetricsListener[] listeners = LicenseMetrics.listeners;
+        if (0 == listeners.length || null == subject)
+            return null;
+        final Object[] contexts = new Object[1 + listeners.length];
+        contexts[0] = listeners;
+        for (int i = 0; i < listeners.length; i++)
+            contexts[1 + i] = listeners[i].begin(subject, stage);
+        return contexts;
+    }
+
+    /**
+     * Records the end of the given stage and notifies the listeners which
+     * have been notified when it began.
+     *
+     * @param stage the stage.
+     * @param context the object returned by {@link #begin(LicenseStage)}.
+     * @param start the value of {@link System#nanoTime()} when the stage
+     *        began.
+     * @param bytes the number of bytes processed or zero if not applicable.
+     * @param succeeded whether the stage completed without throwing an
+     *        exception.
+     */
+    void end(
+            final LicenseStage stage,
+            final Object context,
+            final long start,
+            final long bytes,
+            final boolean succeeded) {
+        if (null == subject)
+            return;
+        final long nanos = System.nanoTime() - start;
+        stages[stage.ordinal()].record(nanos, bytes, succeeded);
+        if (null == context)
+            return;
+        final Object[] contexts = (Object[]) context;
+        final LicenseMetricsListener[] listeners
+                = (LicenseMetricsListener[]) contexts[0];
+        for (int i = 0; i < listeners.length; i++)
+            listeners[i].end(contexts[1 + i],
+                    subject, stage, nanos, bytes, succeeded);
+    }
+
+    /**
+     * Returns {@code true} if and only if this instance records anything,
+     * i.e. if it's not {@link #NONE}.
+     * Neither this instance nor any listener is notified otherwise.
+     */
+    boolean isRecording() {
+        return null != subject;
+    }
+
+    /** Returns {@code true} if and only if any listener is installed. */
+    static boolean isListened() {
+        return 0 != listeners.length;
+    }
+
+    /**
+     * Counts the given number of ends of the given successful stage without
+     * timing them.
+     */
+    void count(final LicenseStage stage, final int ends) {
+        if (null == subject || 0 == ends)
+            return;
+        stages[stage.ordinal()].count.add(ends);
+    }
+
+    /**
+     * Records the given duration of an interleaved stage and notifies the
+     * listeners.
+     */
+    void record(
+            final LicenseStage stage,
+            final long nanos,
+            final long bytes,
+            final boolean succeeded) {
+        if (null == subject)
+            return;
+        stages[stage.ordinal()].record(nanos, bytes, succeeded);
+        for (final LicenseMetricsListener listener : listeners)
+            listener.end(null, subject, stage, nanos, bytes, succeeded);
+    }
+
+    public String toString() {
+        return getClass().getName() + "[subject=" + subject + "]"; // NOI18N
+    }
+
+    private static final class MetricsReference
+    extends WeakReference<LicenseMetrics> {
+        final String subject;
+
+        MetricsReference(final LicenseMetrics metrics) {
+            super(metrics, collected);
+            this.subject = metrics.subject;
+        }
+    }
+
+    private static final class Stage {
+        final LicenseStage stage;
+        final LongAdder count = new LongAdder();
+        final LongAdder samples = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Stage(final LicenseStage stage) {
+            this.stage = stage;
+        }
+
+        void record(final long nanos, final long bytes, final boolean succeeded) {
+            histogram.record(nanos);
+            this.nanos.add(nanos);
+            if (0 != bytes)
+                this.bytes.add(bytes);
+            if (!succeeded)
+                failures.increment();
+            samples.increment();
+            count.increment();
+        }
+
+        LicenseStageStatistics getStatistics() {
+            return new LicenseStageStatistics(stage, count.sum(),
+                    samples.sum(), failures.sum(), nanos.sum(), bytes.sum(),
+                    histogram);
+        }
+
+        void reset() {
+            count.reset();
+            samples.reset();
+            failures.reset();
+            nanos.reset();
+            bytes.reset();
+            histogram.reset();
+        }
+    }
+}
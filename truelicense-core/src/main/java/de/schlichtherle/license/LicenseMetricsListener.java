@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+/**
+ * Receives the stages of creating, installing and verifying license keys as
+ * they happen, so that they can get forwarded to other metrics or tracing
+ * systems.
+ * A listener is installed by calling
+ * {@link LicenseMetrics#addListener(LicenseMetricsListener)}.
+ * Any number of listeners may be installed at the same time.
+ * <p>
+ * Both methods are called on the thread which runs the stage, so
+ * implementations must be thread safe.
+ * They are called on the hot path, so they should return quickly and must
+ * not throw any exception.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+public interface LicenseMetricsListener {
+
+    /**
+     * Called when the given stage begins.
+     *
+     * @param  subject the licensing subject.
+     * @param  stage the stage.
+     * @return Any object which gets passed to
+     *         {@link #end(Object, String, LicenseStage, long, long, boolean)}
+     *         when the stage ends - may be {@code null}.
+     */
+    Object begin(String subject, LicenseStage stage);
+
+    /**
+     * Called when the given stage ends.
+     * For stages which are interleaved with others, this method is called
+     * when the enclosing stage ends without a prior call to
+     * {@link #begin(String, LicenseStage)}, so {@code context} is
+     * {@code null} then.
+     *
+     * @param context the object returned by
+     *        {@link #begin(String, LicenseStage)} - may be {@code null}.
+     * @param subject the licensing subject.
+     * @param stage the stage.
+     * @param nanos the duration of the stage in nanoseconds.
+     * @param bytes the size of the license key or XML processed in this
+     *        stage or zero if not applicable.
+     * @param succeeded whether the stage completed without throwing an
+     *        exception.
+     * @see   LicenseStage
+     */
+    void end(
+            Object context,
+            String subject,
+            LicenseStage stage,
+            long nanos,
+            long bytes,
+            boolean succeeded);
+}
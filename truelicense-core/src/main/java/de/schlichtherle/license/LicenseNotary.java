@@ -6,6 +6,7 @@ package de.schlichtherle.license;
 
 import de.schlichtherle.util.ObfuscatedString;
 import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.GenericCertificateIntegrityException;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -73,6 +74,8 @@ public class LicenseNotary {
     private PrivateKey privateKey; // lazy initialised by getPrivateKey()
     private PublicKey  publicKey;  // lazy initialised by getPublicKey()
 
+    private volatile LicenseMetrics metrics = LicenseMetrics.NONE;
+
     /**
      * Creates a new License Notary.
      * <p>
@@ -120,6 +123,26 @@ public class LicenseNotary {
         setKeyStoreParam0(param);
     }
 
+    /**
+     * Returns the metrics for signing and verifying license certificates.
+     * Unless {@link #setMetrics(LicenseMetrics)} has been called, nothing
+     * is recorded.
+     */
+    public LicenseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics for signing and verifying license certificates.
+     *
+     * @param metrics the metrics - may <em>not</em> be {@code null}.
+     */
+    public void setMetrics(final LicenseMetrics metrics) {
+        if (null == metrics)
+            throw new NullPointerException();
+        this.metrics = metrics;
+    }
+
     private void setKeyStoreParam0(final KeyStoreParam param) {
         // Check parameters to implement fail-fast behaviour and enforce
         // a reasonably good security level.
@@ -202,7 +225,16 @@ public class LicenseNotary {
      * @throws Exception for various reasons.
      */
     void sign(GenericCertificate certificate, Object content) throws Exception {
-        certificate.sign(content, getPrivateKey(), getSignatureEngine());
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.SIGN);
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            certificate.sign(content, getPrivateKey(), getSignatureEngine());
+            ok = true;
+        } finally {
+            metrics.end(LicenseStage.SIGN, context, start, 0, ok);
+        }
     }
 
     /** 
@@ -233,7 +265,36 @@ public class LicenseNotary {
      *         reasons.
      */
     public void verify(GenericCertificate certificate) throws Exception {
-        certificate.verify(getPublicKey(), getSignatureEngine());
+        if (!tryVerify(certificate))
+            throw new GenericCertificateIntegrityException();
+    }
+
+    /**
+     * Verifies the digital signature of the encoded content in the given
+     * {@code certificate} and locks it if it matches.
+     * This method is equivalent to {@link #verify(GenericCertificate)}
+     * except that it returns {@code false} instead of throwing an exception
+     * if the signature does not match, so that the certificate can get
+     * verified with another license notary.
+     *
+     * @param  certificate the generic certificate to verify
+     *         - may <em>not</em> be {@code null}.
+     * @return {@code true} if and only if the signature matches and the
+     *         certificate has been locked.
+     * @throws Exception a subclass of this class may be thrown for various
+     *         other reasons.
+     * @see    GenericCertificate#tryVerify(java.security.PublicKey, Signature)
+     */
+    public boolean tryVerify(GenericCertificate certificate) throws Exception {
+        final LicenseMetrics metrics = this.metrics;
+        final Object context = metrics.begin(LicenseStage.VERIFY_SIGNATURE);
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            return ok = certificate.tryVerify(getPublicKey(), getSignatureEngine());
+        } finally {
+            metrics.end(LicenseStage.VERIFY_SIGNATURE, context, start, 0, ok);
+        }
     }
 
     /**
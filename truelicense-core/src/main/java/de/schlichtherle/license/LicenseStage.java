@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+/**
+ * The stages of creating, installing and verifying license keys for which
+ * {@link LicenseMetrics} are recorded.
+ * The first stages are the public operations of a {@link LicenseManager},
+ * the remaining stages are the steps they are composed of.
+ * <p>
+ * The stages {@link #ENCODE}, {@link #COMPRESS}, {@link #ENCRYPT},
+ * {@link #DECRYPT}, {@link #DECOMPRESS} and {@link #DECODE} are interleaved
+ * because a {@link PrivacyGuard} streams the license key through them.
+ * Their durations are measured within the enclosing stage
+ * {@link #CERT2KEY} or {@link #KEY2CERT} and recorded when it ends
+ * successfully.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseMetricsListener
+ */
+public enum LicenseStage {
+
+    /** {@link LicenseManager#create(LicenseContent)} and its variants. */
+    CREATE,
+
+    /** {@link LicenseManager#install(java.io.File)} and its variants. */
+    INSTALL,
+
+    /**
+     * {@link LicenseManager#verify()} if the license key needs to get
+     * decrypted, decompressed, decoded and verified and
+     * {@link LicenseManager#verify(byte[])} and its variants.
+     */
+    VERIFY,
+
+    /**
+     * {@link LicenseManager#verify()} if the license certificate is cached.
+     */
+    VERIFY_CACHED,
+
+    /** Loading the license key from the preferences. */
+    LOAD_KEY,
+
+    /** Storing or removing the license key in the preferences. */
+    STORE_KEY,
+
+    /** {@link PrivacyGuard#cert2key(de.schlichtherle.xml.GenericCertificate)}. */
+    CERT2KEY,
+
+    /** Encoding the license certificate to XML within {@link #CERT2KEY}. */
+    ENCODE,
+
+    /** Compressing the XML within {@link #CERT2KEY}. */
+    COMPRESS,
+
+    /** Encrypting the compressed XML within {@link #CERT2KEY}. */
+    ENCRYPT,
+
+    /** {@link PrivacyGuard#key2cert(byte[])}. */
+    KEY2CERT,
+
+    /** Decrypting the license key within {@link #KEY2CERT}. */
+    DECRYPT,
+
+    /** Decompressing the decrypted license key within {@link #KEY2CERT}. */
+    DECOMPRESS,
+
+    /** Decoding the license certificate from XML within {@link #KEY2CERT}. */
+    DECODE,
+
+    /** Decoding the license content from the license certificate. */
+    DECODE_CONTENT,
+
+    /** {@link LicenseNotary#sign(Object)}, including encoding the content. */
+    SIGN,
+
+    /**
+     * {@link LicenseNotary#verify(de.schlichtherle.xml.GenericCertificate)}
+     * and {@link LicenseNotary#tryVerify(de.schlichtherle.xml.GenericCertificate)}.
+     */
+    VERIFY_SIGNATURE,
+
+    /** {@link LicenseManager#validate(LicenseContent)}. */
+    VALIDATE
+}
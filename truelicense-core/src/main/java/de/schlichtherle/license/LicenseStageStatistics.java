@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+/**
+ * An immutable record of the {@link LicenseMetrics} of a
+ * {@link LicenseStage}.
+ * Percentiles are approximations with a relative error of less than 12.5%.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseManagerMXBean#getStageStatistics()
+ */
+public final class LicenseStageStatistics {
+
+    private final LicenseStage stage;
+    private final long count;
+    private final long samples;
+    private final long failures;
+    private final long nanos;
+    private final long bytes;
+    private final long p50, p90, p99, p999, max;
+
+    LicenseStageStatistics(
+            final LicenseStage stage,
+            final long count,
+            final long samples,
+            final long failures,
+            final long nanos,
+            final long bytes,
+            final LatencyHistogram histogram) {
+        this.stage = stage;
+        this.count = count;
+        this.samples = samples;
+        this.failures = failures;
+        this.nanos = nanos;
+        this.bytes = bytes;
+        this.p50 = histogram.percentile(50);
+        this.p90 = histogram.percentile(90);
+        this.p99 = histogram.percentile(99);
+        this.p999 = histogram.percentile(99.9);
+        this.max = histogram.max();
+    }
+
+    /** Returns the name of the stage. */
+    public String getStage() {
+        return stage.name();
+    }
+
+    /** Returns the number of times the stage has ended. */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of times the stage has been timed.
+     * This is less than the {@linkplain #getCount() count} if only a sample
+     * has been timed, like for {@link LicenseStage#VERIFY_CACHED}.
+     * The time statistics refer to this sample.
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /** Returns the number of times the stage has thrown an exception. */
+    public long getFailures() {
+        return failures;
+    }
+
+    /** Returns the total time spent in the timed samples of the stage in nanoseconds. */
+    public long getTotalNanos() {
+        return nanos;
+    }
+
+    /**
+     * Returns the mean time spent in the stage in nanoseconds or zero if it
+     * hasn't been timed yet.
+     */
+    public long getMeanNanos() {
+        return 0 != samples ? nanos / samples : 0;
+    }
+
+    /** Returns the total number of bytes processed in the timed samples of the stage. */
+    public long getTotalBytes() {
+        return bytes;
+    }
+
+    /** Returns the median time spent in the stage in nanoseconds. */
+    public long getP50Nanos() {
+        return p50;
+    }
+
+    /** Returns the 90th percentile of the time spent in the stage in nanoseconds. */
+    public long getP90Nanos() {
+        return p90;
+    }
+
+    /** Returns the 99th percentile of the time spent in the stage in nanoseconds. */
+    public long getP99Nanos() {
+        return p99;
+    }
+
+    /** Returns the 99.9th percentile of the time spent in the stage in nanoseconds. */
+    public long getP999Nanos() {
+        return p999;
+    }
+
+    /** Returns the maximum time spent in the stage in nanoseconds. */
+    public long getMaxNanos() {
+        return max;
+    }
+
+    public String toString() {
+        return stage
+                + "[count=" + count // NOI18N
+                + ", samples=" + samples // NOI18N
+                + ", failures=" + failures // NOI18N
+                + ", meanNanos=" + getMeanNanos() // NOI18N
+                + ", p50Nanos=" + p50 // NOI18N
+                + ", p99Nanos=" + p99 // NOI18N
+                + ", maxNanos=" + max // NOI18N
+                + ", totalBytes=" + bytes // NOI18N
+                + "]"; // NOI18N
+    }
+}
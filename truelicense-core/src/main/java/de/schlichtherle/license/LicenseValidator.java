@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+/**
+ * A rule for validating license contents.
+ * License validators are registered with a {@link LicenseManager}, which
+ * runs them in ascending order of their {@linkplain #getCost() cost}
+ * whenever a license content needs to get validated, e.g. for checking a
+ * host binding, an edition or a feature flag.
+ * Validation stops with the first validator which throws an exception.
+ * <p>
+ * The license manager caches the outcome of validation until the
+ * {@code notAfter} property of the license content has passed or its cache
+ * times out, so the outcome of a validator must depend on its parameters
+ * only.
+ * <p>
+ * Implementations must be thread safe.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseManager#addLicenseValidator(LicenseValidator)
+ * @see StandardLicenseValidator
+ */
+public interface LicenseValidator {
+
+    /**
+     * Returns the relative cost of this validator.
+     * Validators with a lower cost run first.
+     * Validators with equal cost run in the order of their registration.
+     * The {@linkplain StandardLicenseValidator standard validators} have a
+     * cost of zero.
+     * This method is called once when the validator gets registered.
+     */
+    int getCost();
+
+    /**
+     * Validates the given license content.
+     *
+     * @param  param the license configuration parameters of the license
+     *         manager - {@code null} is never provided.
+     * @param  content the license content
+     *         - {@code null} is never provided.
+     * @param  now the current time in milliseconds since the epoch according
+     *         to the clock of the license manager.
+     * @throws LicenseContentException if the validation fails.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     */
+    void validate(LicenseParam param, LicenseContentSnapshot content, long now)
+    throws LicenseContentException;
+}
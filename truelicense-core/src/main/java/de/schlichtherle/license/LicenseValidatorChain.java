@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An ordered list of license validators which records the invocation count,
+ * failure count and latency of each of them.
+ * The list is copied on each modification, so validating doesn't need to
+ * lock it.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+final class LicenseValidatorChain {
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    /** The entries in ascending order of their cost. */
+    private volatile Entry[] entries = NO_ENTRIES;
+
+    /**
+     * Adds the given validator after all validators with the same or a
+     * lower cost.
+     */
+    synchronized void add(final LicenseValidator validator) {
+        if (null == validator)
+            throw new NullPointerException();
+        final Entry entry = new Entry(validator);
+        final Entry[] entries = this.entries;
+        int i = entries.length;
+        while (0 < i && entries[i - 1].cost > entry.cost)
+            i--;
+        final Entry[] added = new Entry[entries.length + 1];
+        System.arraycopy(entries, 0, added, 0, i);
+        added[i] = entry;
+        System.arraycopy(entries, i, added, i + 1, entries.length - i);
+        this.entries = added;
+    }
+
+    /**
+     * Removes the first registration of the given validator.
+     *
+     * @return {@code true} if and only if the validator has been removed.
+     */
+    synchronized boolean remove(final LicenseValidator validator) {
+        final Entry[] entries = this.entries;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].validator.equals(validator)) {
+                final Entry[] removed = new Entry[entries.length - 1];
+                System.arraycopy(entries, 0, removed, 0, i);
+                System.arraycopy(entries, i + 1, removed, i, removed.length - i);
+                this.entries = removed;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the validators in the order of their invocation. */
+    LicenseValidator[] getValidators() {
+        final Entry[] entries = this.entries;
+        final LicenseValidator[] validators = new LicenseValidator[entries.length];
+        for (int i = 0; i < entries.length; i++)
+            validators[i] = entries[i].validator;
+        return validators;
+    }
+
+    /** Returns the statistics of the validators in the order of their invocation. */
+    LicenseValidatorStatistics[] getStatistics() {
+        final Entry[] entries = this.entries;
+        final LicenseValidatorStatistics[] statistics
+                = new LicenseValidatorStatistics[entries.length];
+        for (int i = 0; i < entries.length; i++)
+            statistics[i] = entries[i].getStatistics();
+        return statistics;
+    }
+
+    /**
+     * Runs the validators in ascending order of their cost until the first
+     * of them fails.
+     */
+    void validate(
+            final LicenseParam param,
+            final LicenseContentSnapshot content,
+            final long now)
+    throws LicenseContentException {
+        final Entry[] entries = this.entries;
+        for (int i = 0; i < entries.length; i++)
+            entries[i].validate(param, content, now);
+    }
+
+    private static final class Entry {
+        final LicenseValidator validator;
+        final int cost;
+        final LongAdder invocations = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        Entry(final LicenseValidator validator) {
+            this.validator = validator;
+            this.cost = validator.getCost();
+        }
+
+        void validate(
+                final LicenseParam param,
+                final LicenseContentSnapshot content,
+                final long now)
+        throws LicenseContentException {
+            final long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                validator.validate(param, content, now);
+                ok = true;
+            } finally {
+                nanos.add(System.nanoTime() - start);
+                invocations.increment();
+                if (!ok)
+                    failures.increment();
+            }
+        }
+
+        LicenseValidatorStatistics getStatistics() {
+            return new LicenseValidatorStatistics(validator, cost,
+                    invocations.sum(), failures.sum(), nanos.sum());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+/**
+ * An immutable record of the invocations of a registered
+ * {@link LicenseValidator}, so that you can see which validators dominate
+ * the time spent for validating license contents.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseManager#getLicenseValidatorStatistics()
+ */
+public final class LicenseValidatorStatistics {
+
+    private final LicenseValidator validator;
+    private final int cost;
+    private final long invocations;
+    private final long failures;
+    private final long nanos;
+
+    LicenseValidatorStatistics(
+            final LicenseValidator validator,
+            final int cost,
+            final long invocations,
+            final long failures,
+            final long nanos) {
+        this.validator = validator;
+        this.cost = cost;
+        this.invocations = invocations;
+        this.failures = failures;
+        this.nanos = nanos;
+    }
+
+    /** Returns the license validator. */
+    public LicenseValidator getValidator() {
+        return validator;
+    }
+
+    /** Returns the cost of the license validator upon its registration. */
+    public int getCost() {
+        return cost;
+    }
+
+    /** Returns the number of invocations of the license validator. */
+    public long getInvocations() {
+        return invocations;
+    }
+
+    /**
+     * Returns the number of invocations of the license validator which have
+     * thrown an exception.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the total time spent in the license validator in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return nanos;
+    }
+
+    /**
+     * Returns the mean time spent per invocation of the license validator
+     * in nanoseconds or zero if it hasn't been invoked yet.
+     */
+    public long getMeanNanos() {
+        return 0 != invocations ? nanos / invocations : 0;
+    }
+
+    public String toString() {
+        return validator
+                + "[cost=" + cost // NOI18N
+                + ", invocations=" + invocations // NOI18N
+                + ", failures=" + failures // NOI18N
+                + ", totalNanos=" + nanos // NOI18N
+                + "]"; // NOI18N
+    }
+}
@@ -10,22 +10,26 @@ import de.schlichtherle.xml.PersistenceService;
 import de.schlichtherle.xml.PersistenceServiceException;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 import javax.crypto.Cipher;
 import javax.crypto.CipherOutputStream;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.PBEParameterSpec;
 
@@ -47,6 +51,8 @@ public class PrivacyGuard {
 
     private CipherParam param; // initialized by setCipherParam() - should be accessed via getCipherParam() only!
 
+    private KeyCompression compression = KeyCompression.GZIP;
+
     //
     // Data computed and cached from the cipher configuration parameters.
     //
@@ -55,6 +61,8 @@ public class PrivacyGuard {
     private SecretKey key;
     private AlgorithmParameterSpec algoParamSpec;
 
+    private volatile LicenseMetrics metrics = LicenseMetrics.NONE;
+
     /**
      * Creates a new Privacy Guard.
      * <p>
@@ -101,6 +109,52 @@ public class PrivacyGuard {
         setCipherParam0(param);
     }
 
+    /**
+     * Returns the compression stage which is applied to the encoded license
+     * certificate when creating a license key.
+     * The default is {@link KeyCompression#GZIP}.
+     */
+    public KeyCompression getKeyCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the compression stage which is applied to the encoded license
+     * certificate when creating a license key.
+     * This property has no effect on decrypting a license key because the
+     * compression stage is detected from the plain text.
+     *
+     * @param compression the compression stage
+     *        - may <em>not</em> be {@code null}.
+     */
+    public void setKeyCompression(final KeyCompression compression) {
+        if (null == compression)
+            throw new NullPointerException();
+        this.compression = compression;
+    }
+
+    /**
+     * Returns the metrics for converting between license certificates and
+     * license keys.
+     * Unless {@link #setMetrics(LicenseMetrics)} has been called, nothing
+     * is recorded.
+     */
+    public LicenseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics for converting between license certificates and
+     * license keys.
+     *
+     * @param metrics the metrics - may <em>not</em> be {@code null}.
+     */
+    public void setMetrics(final LicenseMetrics metrics) {
+        if (null == metrics)
+            throw new NullPointerException();
+        this.metrics = metrics;
+    }
+
     private void setCipherParam0(CipherParam param) {
         // Check parameters to implement fail-fast behaviour.
         if (param == null)
@@ -132,19 +186,109 @@ public class PrivacyGuard {
      */
     public byte[] cert2key(final GenericCertificate certificate)
     throws Exception {
-        // Encode the certificate and store it to a file.
         final ByteArrayOutputStream keyOut = new ByteArrayOutputStream();
-        final OutputStream out = new GZIPOutputStream(
-                new CipherOutputStream(
-                    keyOut,
-                    getCipher4Encryption()));
-        try {
-            PersistenceService.store(certificate, out);
+        cert2key(certificate, keyOut);
+        return keyOut.toByteArray();
+    }
+
+    /**
+     * Encodes, compresses and encrypts the given license certificate
+     * and writes the result as a license key to the given channel.
+     * Please note that this method does not sign the certificate.
+     * <p>
+     * The license key is streamed to the channel, so no intermediate
+     * byte array holding the entire license key is required.
+     * The channel is <em>always</em> closed (even if an exception is thrown).
+     *
+     * @param certificate The license certificate
+     *        - may <em>not</em> be {@code null}.
+     * @param keyChannel The channel to write the license key to
+     *        - may <em>not</em> be {@code null}.
+     *
+     * @throws Exception An instance of a subclass of this class for various
+     *         reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     */
+    public void cert2key(
+            final GenericCertificate certificate,
+            final WritableByteChannel keyChannel)
+    throws Exception {
+        cert2key(certificate, Channels.newOutputStream(keyChannel));
+    }
+
+    /**
+     * Encodes, compresses and encrypts the given license certificate
+     * and writes the result as a license key to the given stream.
+     * Please note that this method does not sign the certificate.
+     * <p>
+     * The license key is streamed to the stream, so no intermediate
+     * byte array holding the entire license key is required.
+     * The stream is <em>always</em> closed (even if an exception is thrown).
+     *
+     * @param certificate The license certificate
+     *        - may <em>not</em> be {@code null}.
+     * @param keyOut The unbuffered stream to write the license key to
+     *        - may <em>not</em> be {@code null}.
+     *
+     * @throws Exception An instance of a subclass of this class for various
+     *         reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     */
+    public void cert2key(
+            final GenericCertificate certificate,
+            final OutputStream keyOut)
+    throws Exception {
+        final LicenseMetrics metrics = this.metrics;
+        if (!metrics.isRecording()) {
+            final OutputStream xml;
+            try {
+                xml = getKeyCompression().compress(
+                        new CipherOutputStream(keyOut, getCipher4Encryption()));
+            } catch (final IOException ex) {
+                keyOut.close();
+                throw ex;
+            }
+            PersistenceService.store(certificate, xml);
+            return;
         }
-        catch (PersistenceServiceException cannotHappen) {
-            throw new AssertionError(cannotHappen);
+        final Object context = metrics.begin(LicenseStage.CERT2KEY);
+        final long start = System.nanoTime();
+        final MeteredOutputStream key = new MeteredOutputStream(keyOut);
+        MeteredOutputStream compressed = null, xml = null;
+        long setup = 0;
+        boolean ok = false;
+        try {
+            try {
+                compressed = new MeteredOutputStream(
+                        new CipherOutputStream(
+                            key,
+                            getCipher4Encryption()));
+                final long t = System.nanoTime();
+                xml = new MeteredOutputStream(
+                        getKeyCompression().compress(compressed));
+                setup = System.nanoTime() - t;
+            } catch (final IOException ex) {
+                keyOut.close();
+                throw ex;
+            }
+            PersistenceService.store(certificate, xml);
+            ok = true;
+        } finally {
+            if (ok) {
+                final long nanos = System.nanoTime() - start;
+                metrics.record(LicenseStage.ENCODE,
+                        nanos - xml.nanos - setup, xml.bytes, true);
+                metrics.record(LicenseStage.COMPRESS,
+                        xml.nanos + setup - compressed.nanos, compressed.bytes, true);
+                metrics.record(LicenseStage.ENCRYPT,
+                        compressed.nanos, key.bytes, true);
+            }
+            metrics.end(LicenseStage.CERT2KEY, context, start, key.bytes, ok);
         }
-        return keyOut.toByteArray();
     }
 
     /**
@@ -166,19 +310,87 @@ public class PrivacyGuard {
      */
     public GenericCertificate key2cert(final byte[] key)
     throws Exception {
-        final InputStream in = new GZIPInputStream(
-                new ByteArrayInputStream(
-                    getCipher4Decryption().doFinal(key)));
-        final GenericCertificate certificate;
-        try {
-            certificate = (GenericCertificate) PersistenceService.load(in);
+        return key2cert(new ByteArrayInputStream(key));
+    }
+
+    /**
+     * Decrypts, decompresses and decodes the license key read from the given
+     * stream and returns the result as a license certificate.
+     * Please note that this method does not verify the certificate.
+     * <p>
+     * The license key is decrypted, decompressed and decoded in a single
+     * pass through small buffers, so no intermediate byte array holding the
+     * entire plain text is required.
+     * If the padding of the cipher text is invalid, e.g. because of a wrong
+     * password or a corrupt key, then the exception of the cipher gets thrown
+     * even if decompressing or decoding has failed before, which is attached
+     * as suppressed then.
+     * The stream is <em>always</em> closed (even if an exception is thrown).
+     *
+     * @param keyIn The unbuffered stream to read the license key from
+     *        - may <em>not</em> be {@code null}.
+     *
+     * @return The license certificate
+     *         - {@code null} is never returned.
+     *
+     * @throws Exception An instance of a subclass of this class for various
+     *         reasons.
+     *         Note that you should always use
+     *         {@link Throwable#getLocalizedMessage()} to get a (possibly
+     *         localized) meaningful detail message.
+     */
+    public GenericCertificate key2cert(final InputStream keyIn)
+    throws Exception {
+        final LicenseMetrics metrics = this.metrics;
+        if (!metrics.isRecording()) {
+            final DecryptingInputStream decrypting
+                    = new DecryptingInputStream(keyIn, getCipher4Decryption());
+            try {
+                final GenericCertificate certificate
+                        = (GenericCertificate) PersistenceService.load(
+                            KeyCompression.decompress(decrypting), 0);
+                decrypting.drain();
+                return certificate;
+            } catch (final Exception ex) {
+                throw decrypting.failure(ex);
+            } finally {
+                keyIn.close();
+            }
         }
-        finally {
-            try { in.close(); }
-            catch (IOException weDontCare) { }
+        final Object context = metrics.begin(LicenseStage.KEY2CERT);
+        final long start = System.nanoTime();
+        final MeteredInputStream key = new MeteredInputStream(keyIn);
+        final DecryptingInputStream decrypting
+                = new DecryptingInputStream(key, getCipher4Decryption());
+        final MeteredInputStream decrypted = new MeteredInputStream(decrypting);
+        MeteredInputStream xml = null;
+        long setup = 0;
+        boolean ok = false;
+        try {
+            final long t = System.nanoTime();
+            xml = new MeteredInputStream(
+                    KeyCompression.decompress(decrypted));
+            setup = System.nanoTime() - t;
+            final GenericCertificate certificate
+                    = (GenericCertificate) PersistenceService.load(xml, 0);
+            decrypting.drain();
+            ok = true;
+            return certificate;
+        } catch (final Exception ex) {
+            throw decrypting.failure(ex);
+        } finally {
+            keyIn.close();
+            if (ok) {
+                final long nanos = System.nanoTime() - start;
+                metrics.record(LicenseStage.DECRYPT,
+                        decrypted.nanos, key.bytes, true);
+                metrics.record(LicenseStage.DECOMPRESS,
+                        xml.nanos + setup - decrypted.nanos, decrypted.bytes, true);
+                metrics.record(LicenseStage.DECODE,
+                        nanos - xml.nanos - setup, xml.bytes, true);
+            }
+            metrics.end(LicenseStage.KEY2CERT, context, start, key.bytes, ok);
         }
-
-        return certificate;
     }
 
     /**
@@ -268,4 +480,219 @@ public class PrivacyGuard {
         }
         return cipher;
     }
+
+    /**
+     * An input stream which counts the bytes read from another input stream
+     * and the time spent reading them.
+     */
+    private static final class MeteredInputStream extends FilterInputStream {
+        long nanos, bytes;
+
+        MeteredInputStream(final InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            final long start = System.nanoTime();
+            final int b = in.read();
+            nanos += System.nanoTime() - start;
+            if (0 <= b)
+                bytes++;
+            return b;
+        }
+
+        public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+            final long start = System.nanoTime();
+            final int n = in.read(b, off, len);
+            nanos += System.nanoTime() - start;
+            if (0 < n)
+                bytes += n;
+            return n;
+        }
+
+        public long skip(final long n) throws IOException {
+            final long start = System.nanoTime();
+            final long skipped = in.skip(n);
+            nanos += System.nanoTime() - start;
+            bytes += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * An output stream which counts the bytes written to another output
+     * stream and the time spent writing, flushing and closing it.
+     */
+    private static final class MeteredOutputStream extends FilterOutputStream {
+        long nanos, bytes;
+
+        MeteredOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        public void write(final int b) throws IOException {
+            final long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            bytes++;
+        }
+
+        public void write(final byte[] b, final int off, final int len)
+        throws IOException {
+            final long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            bytes += len;
+        }
+
+        public void flush() throws IOException {
+            final long start = System.nanoTime();
+            out.flush();
+            nanos += System.nanoTime() - start;
+        }
+
+        public void close() throws IOException {
+            final long start = System.nanoTime();
+            out.close();
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * An input stream which decrypts the data read from another input
+     * stream through fixed size buffers.
+     * Unlike {@link javax.crypto.CipherInputStream}, this class does not
+     * allocate a new output buffer for each chunk and reports an invalid
+     * padding as an {@link IOException}.
+     * <p>
+     * Closing this stream does <em>not</em> close the underlying stream:
+     * If decompressing or decoding the plain text fails, then a wrong
+     * password or a corrupt key is the most likely cause, but the cipher
+     * can only tell by its padding at the end of the cipher text.
+     * So the caller needs to {@link #failure(Exception) drain} this stream
+     * first and close the underlying stream afterwards.
+     */
+    private static final class DecryptingInputStream extends FilterInputStream {
+        private static final int BUFSIZE = 512;
+
+        private final Cipher cipher;
+        private final byte[] ibuf = new byte[BUFSIZE];
+        private final byte[] obuf;
+        private int opos, olen;
+        private boolean eof;
+        private GeneralSecurityException failure;
+
+        DecryptingInputStream(final InputStream in, final Cipher cipher) {
+            super(in);
+            this.cipher = cipher;
+            // The cipher may hold back up to one block until the next call.
+            this.obuf = new byte[BUFSIZE + 2 * Math.max(1, cipher.getBlockSize())];
+        }
+
+        private boolean fill() throws IOException {
+            while (opos >= olen) {
+                if (eof)
+                    return false;
+                final int n = in.read(ibuf);
+                try {
+                    if (0 > n) {
+                        eof = true;
+                        olen = cipher.doFinal(obuf, 0);
+                    } else {
+                        olen = cipher.update(ibuf, 0, n, obuf, 0);
+                    }
+                } catch (final ShortBufferException cannotHappen) {
+                    throw new AssertionError(cannotHappen);
+                } catch (final GeneralSecurityException ex) {
+                    eof = true;
+                    failure = ex;
+                    throw new IOException(ex);
+                }
+                opos = 0;
+            }
+            return true;
+        }
+
+        public int read() throws IOException {
+            return fill() ? obuf[opos++] & 0xff : -1;
+        }
+
+        public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+            if (0 == len)
+                return 0;
+            if (!fill())
+                return -1;
+            final int n = Math.min(len, olen - opos);
+            System.arraycopy(obuf, opos, b, off, n);
+            opos += n;
+            return n;
+        }
+
+        public long skip(final long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && fill()) {
+                final int m = (int) Math.min(n - skipped, olen - opos);
+                opos += m;
+                skipped += m;
+            }
+            return skipped;
+        }
+
+        public int available() {
+            return olen - opos;
+        }
+
+        public boolean markSupported() {
+            return false;
+        }
+
+        public void mark(int readlimit) {
+        }
+
+        public void reset() throws IOException {
+            throw new IOException("mark/reset not supported"); // NOI18N
+        }
+
+        public void close() {
+        }
+
+        /**
+         * Decrypts the remaining cipher text and throws the exception of
+         * the cipher if it has failed at any time.
+         */
+        void drain() throws IOException, GeneralSecurityException {
+            try {
+                while (fill())
+                    opos = olen;
+            } catch (final IOException ex) {
+                if (null == failure)
+                    throw ex;
+            }
+            if (null != failure)
+                throw failure;
+        }
+
+        /**
+         * Drains this stream and returns the exception of the cipher with
+         * the given exception attached as suppressed if the cipher has failed
+         * or the given exception otherwise.
+         */
+        Exception failure(final Exception ex) {
+            try {
+                drain();
+            } catch (final GeneralSecurityException failure) {
+                for (Throwable t = ex; null != t; t = t.getCause())
+                    if (t == failure)
+                        return failure;
+                failure.addSuppressed(ex);
+                return failure;
+            } catch (final IOException drained) {
+                if (drained != ex)
+                    ex.addSuppressed(drained);
+            }
+            return ex;
+        }
+    }
 }
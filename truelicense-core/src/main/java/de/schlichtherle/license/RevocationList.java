@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import de.schlichtherle.xml.AtomicFileWriter;
+import de.schlichtherle.xml.GenericCertificate;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Signature;
+import java.util.Arrays;
+
+/**
+ * An immutable, signed list of revoked license certificates.
+ * A license certificate is identified by the
+ * {@linkplain GenericCertificate#getFingerprintPrefix() prefix of its fingerprint}.
+ * Alternatively, an application may use any other unique serial number.
+ * <p>
+ * A revocation list gets signed with the private key of a
+ * {@link LicenseNotary} and stored in a binary file which consists of a
+ * header, the sorted identifiers of the revoked license certificates as
+ * big endian {@code long}s and a trailer with the signature:
+ * <pre>
+ * int     magic number "TLRL"
+ * int     format version, currently 1
+ * long    issue time in milliseconds since the epoch
+ * int     number of identifiers n
+ * int     reserved, zero
+ * long[n] identifiers in ascending order
+ * byte[s] signature of all preceding bytes
+ * int     length of the signature s
+ * </pre>
+ * When loading a revocation list from a file, the file gets memory mapped,
+ * so the identifiers are never copied to the heap.
+ * Instead, a Bloom filter which sets four bits in a single 64 bit word per
+ * identifier is built, so that it rules out most identifiers which are not
+ * on the list with a single memory access.
+ * Only if the Bloom filter matches, a binary search over the memory mapped
+ * identifiers is done.
+ * Neither of these operations allocates any objects, so the cost of
+ * checking an identifier stays flat up to millions of revoked license
+ * certificates.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseManager#setRevocationList(RevocationList)
+ */
+public final class RevocationList {
+
+    /** The magic number of the file format. */
+    private static final int MAGIC = 0x544c524c; // "TLRL"
+
+    /** The current version of the file format. */
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+
+    private static final int TRAILER_SIZE = 4;
+
+    /** The maximum number of identifiers, so that all offsets fit in an int. */
+    private static final int MAX_SIZE = (Integer.MAX_VALUE - HEADER_SIZE) / 8 - 1024;
+
+    /** The number of bits in the Bloom filter per identifier. */
+    private static final int BITS_PER_ID = 16;
+
+    /** The empty revocation list. */
+    public static final RevocationList EMPTY
+            = new RevocationList(0, LongBuffer.allocate(0));
+
+    private final long issued;
+    private final LongBuffer ids;
+    private final long[] bloom;
+    private final int mask;
+
+    private RevocationList(final long issued, final LongBuffer ids) {
+        this.issued = issued;
+        this.ids = ids;
+        final int n = ids.limit();
+        int words = 1;
+        while (words * 64L < (long) n * BITS_PER_ID)
+            words <<= 1;
+        final long[] bloom = new long[words];
+        final int mask = words - 1;
+        for (int i = 0; i < n; i++) {
+            final long h = mix(ids.get(i));
+            bloom[(int) h & mask] |= bits(h);
+        }
+        this.bloom = bloom;
+        this.mask = mask;
+    }
+
+    /** Returns a well distributed hash of the given identifier. */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Returns four bits of a Bloom filter word for the given hash. */
+    private static long bits(final long h) {
+        return 1L << (h >>> 40)
+                | 1L << (h >>> 46)
+                | 1L << (h >>> 52)
+                | 1L << (h >>> 58);
+    }
+
+    /**
+     * Returns the encoded revocation list for the given identifiers of
+     * revoked license certificates, signed with the private key of the given
+     * license notary.
+     *
+     * @param  ids the identifiers of the revoked license certificates
+     *         - may <em>not</em> be {@code null}.
+     *         Duplicates are ignored.
+     * @param  issued the issue time in milliseconds since the epoch.
+     * @param  notary the license notary with the private key to sign the
+     *         revocation list - may <em>not</em> be {@code null}.
+     * @return The encoded revocation list - {@code null} is never returned.
+     * @throws Exception for various reasons.
+     */
+    public static byte[] encode(
+            final long[] ids,
+            final long issued,
+            final LicenseNotary notary)
+    throws Exception {
+        final long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++)
+            if (0 == n || sorted[n - 1] != sorted[i])
+                sorted[n++] = sorted[i];
+        if (MAX_SIZE < n)
+            throw new IllegalArgumentException();
+        final int signed = HEADER_SIZE + 8 * n;
+        final ByteBuffer body = ByteBuffer.allocate(signed);
+        body.putInt(MAGIC).putInt(VERSION).putLong(issued).putInt(n).putInt(0);
+        for (int i = 0; i < n; i++)
+            body.putLong(sorted[i]);
+        final Signature engine = notary.getSignatureEngine();
+        engine.initSign(notary.getPrivateKey());
+        engine.update(body.array());
+        final byte[] signature = engine.sign();
+        final ByteBuffer encoded = ByteBuffer.allocate(
+                signed + signature.length + TRAILER_SIZE);
+        encoded.put(body.array()).put(signature).putInt(signature.length);
+        return encoded.array();
+    }
+
+    /**
+     * Encodes the revocation list for the given identifiers of revoked
+     * license certificates, signs it with the private key of the given
+     * license notary and stores it to the given file.
+     * The file is written atomically and durably.
+     *
+     * @param  ids the identifiers of the revoked license certificates
+     *         - may <em>not</em> be {@code null}.
+     *         Duplicates are ignored.
+     * @param  issued the issue time in milliseconds since the epoch.
+     * @param  notary the license notary with the private key to sign the
+     *         revocation list - may <em>not</em> be {@code null}.
+     * @param  file the file to store the revocation list to
+     *         - may <em>not</em> be {@code null}.
+     * @throws Exception for various reasons.
+     * @see    AtomicFileWriter
+     */
+    public static void store(
+            final long[] ids,
+            final long issued,
+            final LicenseNotary notary,
+            final File file)
+    throws Exception {
+        final byte[] encoded = encode(ids, issued, notary);
+        final AtomicFileWriter writer = new AtomicFileWriter();
+        try {
+            final OutputStream out = writer.newOutputStream(file);
+            try {
+                out.write(encoded);
+            } finally {
+                out.close();
+            }
+            writer.commit();
+        } finally {
+            writer.abort(); // no-op if committed
+        }
+    }
+
+    /**
+     * Memory maps the revocation list in the given file and verifies its
+     * signature with the public key of the given license notary.
+     * The mapping remains valid even after the file has been replaced.
+     *
+     * @param  file the file holding the revocation list
+     *         - may <em>not</em> be {@code null}.
+     * @param  notary the license notary with the public key to verify the
+     *         revocation list - may <em>not</em> be {@code null}.
+     * @return The revocation list - {@code null} is never returned.
+     * @throws RevocationListException if the revocation list is malformed
+     *         or its signature does not match.
+     * @throws Exception for any other reason.
+     */
+    public static RevocationList load(
+            final Path file,
+            final LicenseNotary notary)
+    throws Exception {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            if (Integer.MAX_VALUE < size)
+                throw new RevocationListException(file.toString());
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, size),
+                    notary);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Decodes the revocation list in the given buffer and verifies its
+     * signature with the public key of the given license notary.
+     * The buffer is shared, not copied, so it must not be modified
+     * afterwards.
+     *
+     * @param  buffer the buffer holding the revocation list from its position
+     *         to its limit - may <em>not</em> be {@code null}.
+     * @param  notary the license notary with the public key to verify the
+     *         revocation list - may <em>not</em> be {@code null}.
+     * @return The revocation list - {@code null} is never returned.
+     * @throws RevocationListException if the revocation list is malformed
+     *         or its signature does not match.
+     * @throws Exception for any other reason.
+     */
+    public static RevocationList load(
+            final ByteBuffer buffer,
+            final LicenseNotary notary)
+    throws Exception {
+        final ByteBuffer b = buffer.slice();
+        if (HEADER_SIZE > b.remaining()
+                || MAGIC != b.getInt(0)
+                || VERSION != b.getInt(4))
+            throw new RevocationListException(String.valueOf(MAGIC));
+        final long issued = b.getLong(8);
+        final int n = b.getInt(16);
+        if (0 > n || MAX_SIZE < n
+                || HEADER_SIZE + 8 * n + TRAILER_SIZE > b.remaining())
+            throw new RevocationListException(String.valueOf(n));
+        final int signed = HEADER_SIZE + 8 * n;
+        final int s = b.remaining() - signed - TRAILER_SIZE;
+        if (s != b.getInt(b.remaining() - TRAILER_SIZE))
+            throw new RevocationListException(String.valueOf(s));
+
+        final byte[] signature = new byte[s];
+        b.position(signed);
+        b.get(signature);
+        b.position(0).limit(signed);
+        final Signature engine = notary.getSignatureEngine();
+        engine.initVerify(notary.getPublicKey());
+        engine.update(b);
+        if (!engine.verify(signature))
+            throw new RevocationListException(engine.getAlgorithm());
+
+        b.position(HEADER_SIZE);
+        final LongBuffer ids = b.slice().asLongBuffer();
+        for (int i = 1; i < n; i++)
+            if (ids.get(i - 1) >= ids.get(i))
+                throw new RevocationListException(String.valueOf(i));
+        return new RevocationList(issued, ids);
+    }
+
+    /**
+     * Returns the issue time of this revocation list in milliseconds since
+     * the epoch.
+     */
+    public long getIssuedMillis() {
+        return issued;
+    }
+
+    /** Returns the number of revoked license certificates. */
+    public int size() {
+        return ids.limit();
+    }
+
+    /**
+     * Returns {@code true} if and only if the license certificate with the
+     * given fingerprint or serial number has been revoked.
+     * This method does not allocate any objects.
+     */
+    public boolean isRevoked(final long id) {
+        final long h = mix(id);
+        final long bits = bits(h);
+        if (bits != (bloom[(int) h & mask] & bits))
+            return false;
+        final LongBuffer ids = this.ids;
+        int low = 0, high = ids.limit() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midId = ids.get(mid);
+            if (midId < id)
+                low = mid + 1;
+            else if (midId > id)
+                high = mid - 1;
+            else
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if and only if the given locked license
+     * certificate has been revoked.
+     * This method does not allocate any objects.
+     *
+     * @see GenericCertificate#getFingerprintPrefix()
+     */
+    public boolean isRevoked(final GenericCertificate certificate) {
+        return isRevoked(certificate.getFingerprintPrefix());
+    }
+}
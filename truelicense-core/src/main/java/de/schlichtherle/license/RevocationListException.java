@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import de.schlichtherle.util.ObfuscatedString;
+import java.io.IOException;
+
+/**
+ * Thrown if a revocation list cannot get loaded because it is malformed or
+ * its digital signature does not match.
+ *
+ * @author Christian Schlichtherle
+ * @see RevocationList
+ */
+public class RevocationListException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private static final String EXC_CORRUPT_REVOCATION_LIST = new ObfuscatedString(new long[] {
+        0x2F3AF0B1AB6FBFBDL, 0xEE01583D7320AEEAL, 0xEB477B7526676FE4L,
+        0x7ACD7DCB4769CE70L, 0x12F06F767C3E2A15L}).toString(); /* => "exc.corruptRevocationList" */
+
+    /**
+     * Constructs an instance of {@code RevocationListException}
+     * with the given detail message.
+     */
+    public RevocationListException(final String msg) {
+        super(msg);
+    }
+
+    public String getLocalizedMessage() {
+        return Resources.getString(EXC_CORRUPT_REVOCATION_LIST);
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enforces the maximum number of concurrent license consumers given by the
+ * {@code consumerAmount} property of a verified license content by handing
+ * out time limited leases for seats.
+ * <p>
+ * A lease is acquired with {@link #tryAcquire()}, kept alive with
+ * {@link Lease#renew()} and returned with {@link Lease#release()}.
+ * If a lease is neither renewed nor released within the lease duration,
+ * e.g. because its consumer has crashed, it expires and its seat becomes
+ * available again.
+ * <p>
+ * The number of seats in use is tracked with a lock-free counter, so
+ * acquiring and releasing a lease is just a few compare-and-set operations.
+ * Expired leases are detected with a hashed timing wheel which is advanced
+ * by {@link #tryAcquire()} whenever a tick has passed, so there is no need
+ * for a background thread.
+ * Each bucket of the timing wheel is a doubly linked list of leases, so a
+ * released lease is unlinked immediately and doesn't linger in memory
+ * until its deadline.
+ * A lease expires no earlier than its deadline and usually within one tick
+ * after it.
+ * A tick is one sixty-fourth of the lease duration.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseManager#verifySnapshot()
+ */
+public class SeatManager {
+
+    /** The number of ticks per lease duration. */
+    private static final int TICKS_PER_LEASE = 64;
+
+    /** The number of buckets in the timing wheel - must be a power of two. */
+    private static final int WHEEL_SIZE = 2 * TICKS_PER_LEASE;
+
+    private static final long RELEASED = Long.MIN_VALUE;
+    private static final long EXPIRED = Long.MIN_VALUE + 1;
+
+    private final LicenseContentSnapshot content;
+    private final int capacity;
+    private final long leaseMillis;
+    private final long tickMillis;
+    private final Clock clock;
+
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicLong ids = new AtomicLong();
+    private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+    private final AtomicBoolean expiring = new AtomicBoolean();
+
+    /** The last tick which has been processed by the timing wheel. */
+    private volatile long lastTick;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * Constructs a seat manager for the given verified license content
+     * which uses the system clock.
+     *
+     * @param content the verified license content
+     *        - may <em>not</em> be {@code null}.
+     * @param leaseMillis the lease duration in milliseconds
+     *        - must be positive.
+     */
+    public SeatManager(LicenseContentSnapshot content, long leaseMillis) {
+        this(content, leaseMillis, Clock.systemUTC());
+    }
+
+    /**
+     * Constructs a seat manager for the given verified license content.
+     *
+     * @param content the verified license content
+     *        - may <em>not</em> be {@code null}.
+     *        The number of seats is its {@code consumerAmount}.
+     * @param leaseMillis the lease duration in milliseconds
+     *        - must be positive.
+     * @param clock the clock to use for lease deadlines
+     *        - may <em>not</em> be {@code null}.
+     * @throws IllegalArgumentException if {@code leaseMillis} is not
+     *         positive.
+     */
+    public SeatManager(
+            final LicenseContentSnapshot content,
+            final long leaseMillis,
+            final Clock clock) {
+        if (null == content || null == clock)
+            throw new NullPointerException();
+        if (0 >= leaseMillis)
+            throw new IllegalArgumentException();
+        this.content = content;
+        this.capacity = Math.max(0, content.getConsumerAmount());
+        this.leaseMillis = leaseMillis;
+        this.tickMillis = Math.max(1, leaseMillis / TICKS_PER_LEASE);
+        this.clock = clock;
+        for (int i = 0; i < WHEEL_SIZE; i++)
+            wheel[i] = new Bucket();
+        this.lastTick = clock.millis() / tickMillis;
+    }
+
+    /** Returns the license content which this seat manager is based on. */
+    public LicenseContentSnapshot getContent() {
+        return content;
+    }
+
+    /** Returns the total number of seats. */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Returns the number of seats which are currently leased. */
+    public int getUsed() {
+        return used.get();
+    }
+
+    /** Returns the number of seats which are currently available. */
+    public int getAvailable() {
+        return capacity - used.get();
+    }
+
+    /** Returns the lease duration in milliseconds. */
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /** Returns the total number of leases acquired. */
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /** Returns the total number of failed attempts to acquire a lease. */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /** Returns the total number of leases released. */
+    public long getReleasedCount() {
+        return released.sum();
+    }
+
+    /** Returns the total number of leases expired. */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * Acquires a lease for a seat if one is available.
+     *
+     * @return The lease or {@code null} if all seats are leased.
+     */
+    public Lease tryAcquire() {
+        final long now = clock.millis();
+        if (now / tickMillis > lastTick)
+            expire(now);
+        if (!reserve()) {
+            rejected.increment();
+            return null;
+        }
+        final Lease lease = new Lease(ids.incrementAndGet(), now + leaseMillis);
+        schedule(lease, lastTick);
+        acquired.increment();
+        return lease;
+    }
+
+    private boolean reserve() {
+        for (int u; (u = used.get()) < capacity; )
+            if (used.compareAndSet(u, u + 1))
+                return true;
+        return false;
+    }
+
+    /**
+     * Expires all leases which have passed their deadline according to the
+     * clock.
+     * You don't need to call this method because {@link #tryAcquire()}
+     * does this whenever a tick has passed, but it may be useful in order
+     * to update the number of available seats from a scheduled task.
+     *
+     * @return The number of leases expired by this call.
+     */
+    public int expire() {
+        return expire(clock.millis());
+    }
+
+    private int expire(final long now) {
+        if (!expiring.compareAndSet(false, true))
+            return 0; // another thread is already doing it
+        int n = 0;
+        try {
+            final long nowTick = now / tickMillis;
+            long tick = lastTick;
+            if (nowTick - tick > WHEEL_SIZE) // process each bucket at most once
+                tick = nowTick - WHEEL_SIZE;
+            while (tick < nowTick) {
+                tick++;
+                Lease lease = wheel[(int) tick & (WHEEL_SIZE - 1)].detach();
+                while (null != lease) {
+                    final Lease next = lease.next;
+                    final long deadline = lease.deadline;
+                    if (deadline <= now && lease.expire(deadline))
+                        n++;
+                    else
+                        schedule(lease, tick); // renewed or inactive
+                    lease = next;
+                }
+                lastTick = tick;
+            }
+        } finally {
+            expiring.set(false);
+        }
+        return n;
+    }
+
+    /**
+     * Puts the given lease into the bucket of the tick when its deadline
+     * has passed, but never into the bucket of the given current tick.
+     */
+    private void schedule(final Lease lease, final long currentTick) {
+        final long deadline = lease.deadline;
+        if (EXPIRED >= deadline)
+            return; // released or expired
+        long tick = (deadline + tickMillis - 1) / tickMillis;
+        if (tick <= currentTick
+                || 0 == ((tick - currentTick) & (WHEEL_SIZE - 1)))
+            tick = currentTick + 1;
+        wheel[(int) tick & (WHEEL_SIZE - 1)].link(lease);
+    }
+
+    /**
+     * A bucket of the timing wheel.
+     * The links of the leases in a bucket are guarded by its monitor.
+     */
+    private static final class Bucket {
+        private Lease head;
+
+        synchronized void link(final Lease lease) {
+            final Lease head = this.head;
+            lease.prev = null;
+            lease.next = head;
+            if (null != head)
+                head.prev = lease;
+            this.head = lease;
+            lease.bucket = this;
+        }
+
+        synchronized boolean unlink(final Lease lease) {
+            if (this != lease.bucket)
+                return false; // moved concurrently
+            final Lease prev = lease.prev, next = lease.next;
+            if (null != prev)
+                prev.next = next;
+            else
+                head = next;
+            if (null != next)
+                next.prev = prev;
+            lease.prev = lease.next = null;
+            lease.bucket = null;
+            return true;
+        }
+
+        /**
+         * Removes all leases from this bucket and returns the first of them.
+         * The returned leases are still linked by their {@code next} field.
+         */
+        synchronized Lease detach() {
+            final Lease head = this.head;
+            this.head = null;
+            for (Lease lease = head; null != lease; lease = lease.next)
+                lease.bucket = null;
+            return head;
+        }
+    }
+
+    private static final AtomicLongFieldUpdater<Lease> DEADLINE
+            = AtomicLongFieldUpdater.newUpdater(Lease.class, "deadline"); // NOI18N
+
+    /**
+     * A lease for a seat.
+     * The state of a lease is kept in a single word which is updated with
+     * compare-and-set operations, so concurrent calls to {@link #renew()},
+     * {@link #release()} and the expiration of the lease never race.
+     */
+    public final class Lease implements AutoCloseable {
+        private final long id;
+
+        /**
+         * The deadline in milliseconds since the epoch or one of the
+         * sentinel values {@code RELEASED} or {@code EXPIRED}.
+         */
+        volatile long deadline;
+
+        /** The bucket which this lease is linked into, if any. */
+        volatile Bucket bucket;
+
+        /** The links guarded by the monitor of {@link #bucket}. */
+        Lease prev, next;
+
+        Lease(final long id, final long deadline) {
+            this.id = id;
+            this.deadline = deadline;
+        }
+
+        /** Returns the unique identifier of this lease. */
+        public long getId() {
+            return id;
+        }
+
+        /** Returns the seat manager which has issued this lease. */
+        public SeatManager getSeatManager() {
+            return SeatManager.this;
+        }
+
+        /**
+         * Returns the deadline of this lease in milliseconds since the epoch
+         * or {@link Long#MIN_VALUE} if the lease is no longer active.
+         */
+        public long getDeadlineMillis() {
+            final long deadline = this.deadline;
+            return EXPIRED < deadline ? deadline : Long.MIN_VALUE;
+        }
+
+        /**
+         * Returns {@code true} if and only if this lease has been neither
+         * released nor expired.
+         */
+        public boolean isActive() {
+            return EXPIRED < deadline;
+        }
+
+        /**
+         * Extends the deadline of this lease to the lease duration from now.
+         *
+         * @return {@code true} if and only if the lease has been renewed.
+         *         Otherwise, the lease has already been released or expired
+         *         and a new lease needs to get acquired.
+         */
+        public boolean renew() {
+            final long deadline = clock.millis() + leaseMillis;
+            for (long d; EXPIRED < (d = this.deadline); )
+                if (DEADLINE.compareAndSet(this, d, deadline))
+                    return true;
+            return false;
+        }
+
+        /**
+         * Releases this lease so that its seat becomes available again.
+         *
+         * @return {@code true} if and only if the lease has been released by
+         *         this call.
+         */
+        public boolean release() {
+            for (long d; EXPIRED < (d = this.deadline); ) {
+                if (DEADLINE.compareAndSet(this, d, RELEASED)) {
+                    used.decrementAndGet();
+                    released.increment();
+                    for (Bucket b; null != (b = bucket) && !b.unlink(this); ) {
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Equivalent to {@link #release()}. */
+        public void close() {
+            release();
+        }
+
+        /** Expires this lease if it still has the given deadline. */
+        boolean expire(final long deadline) {
+            if (EXPIRED < deadline
+                    && DEADLINE.compareAndSet(this, deadline, EXPIRED)) {
+                used.decrementAndGet();
+                expired.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import de.schlichtherle.util.ObfuscatedString;
+import java.util.prefs.Preferences;
+
+/**
+ * The standard rules for validating license contents.
+ * A {@link LicenseManager} registers all of these validators when it gets
+ * created, so that a subclass can remove any of them in order to apply less
+ * rigid restrictions.
+ * Each of these validators has a cost of zero and they are registered in
+ * the order of their declaration.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ * @see LicenseManager#removeLicenseValidator(LicenseValidator)
+ */
+public enum StandardLicenseValidator implements LicenseValidator {
+
+    /**
+     * The 'subject' must match the subject required by the application via
+     * the {@link LicenseParam} interface.
+     */
+    SUBJECT {
+        public void validate(
+                final LicenseParam param,
+                final LicenseContentSnapshot content,
+                final long now)
+        throws LicenseContentException {
+            if (!param.getSubject().equals(content.getSubject()))
+                throw new LicenseContentException(EXC_INVALID_SUBJECT);
+        }
+    },
+
+    /** The 'holder' must be provided. */
+    HOLDER {
+        public void validate(
+                final LicenseParam param,
+                final LicenseContentSnapshot content,
+                final long now)
+        throws LicenseContentException {
+            if (null == content.getHolder())
+                throw new LicenseContentException(EXC_HOLDER_IS_NULL);
+        }
+    },
+
+    /** The 'issuer' must be provided. */
+    ISSUER {
+        public void validate(
+                final LicenseParam param,
+                final LicenseContentSnapshot content,
+                final long now)
+        throws LicenseContentException {
+            if (null == content.getIssuer())
+                throw new LicenseContentException(EXC_ISSUER_IS_NULL);
+        }
+    },
+
+    /** The 'issued' date must be provided. */
+    ISSUED {
+        public void validate(
+                final LicenseParam param,
+                final LicenseContentSnapshot content,
+                final long now)
+        throws LicenseContentException {
+            if (Long.MIN_VALUE == content.getIssuedMillis())
+                throw new LicenseContentException(EXC_ISSUED_IS_NULL);
+        }
+    },
+
+    /**
+     * If 'notBefore' or 'notAfter' are provided, the current date and time
+     * must match their restrictions.
+     */
+    VALIDITY_PERIOD {
+        public void validate(
+                final LicenseParam param,
+                final LicenseContentSnapshot content,
+                final long now)
+        throws LicenseContentException {
+            if (now < content.getNotBeforeMillis())
+                throw new LicenseContentException(EXC_LICENSE_IS_NOT_YET_VALID);
+            if (now > content.getNotAfterMillis())
+                throw new LicenseContentException(EXC_LICENSE_HAS_EXPIRED);
+        }
+    },
+
+    /**
+     * The 'consumerType' must be provided and 'consumerAmount' must be
+     * positive.
+     * If a user preference node is provided in the license parameters,
+     * 'consumerType' must also match {@code "User"} (whereby case is
+     * ignored) and 'consumerAmount' must equal 1.
+     */
+    CONSUMER {
+        public void validate(
+                final LicenseParam param,
+                final LicenseContentSnapshot content,
+                final long now)
+        throws LicenseContentException {
+            final String consumerType = content.getConsumerType();
+            if (null == consumerType)
+                throw new LicenseContentException(EXC_CONSUMER_TYPE_IS_NULL);
+            final Preferences prefs = param.getPreferences();
+            if (null != prefs && prefs.isUserNode()) {
+                if (!LicenseManager.USER.equalsIgnoreCase(consumerType))
+                    throw new LicenseContentException(EXC_CONSUMER_TYPE_IS_NOT_USER);
+                if (1 != content.getConsumerAmount())
+                    throw new LicenseContentException(EXC_CONSUMER_AMOUNT_IS_NOT_ONE);
+            } else {
+                if (0 >= content.getConsumerAmount())
+                    throw new LicenseContentException(EXC_CONSUMER_AMOUNT_IS_NOT_POSITIVE);
+            }
+        }
+    };
+
+    /** => "exc.invalidSubject" */
+    private static final String EXC_INVALID_SUBJECT = new ObfuscatedString(new long[] {
+        0x8029CDF4E32A76ECL, 0x56FA623D9AEE8C1L, 0x99E7882A708663ACL,
+        0x5888C0D72E548FF4L
+    }).toString();
+
+    /** => "exc.holderIsNull" */
+    private static final String EXC_HOLDER_IS_NULL = new ObfuscatedString(new long[] {
+        0x6339FEFCDFD84427L, 0x57A2FA0735E47CBEL, 0xED1D06E6EED72950L
+    }).toString();
+
+    /** => "exc.issuerIsNull" */
+    private static final String EXC_ISSUER_IS_NULL = new ObfuscatedString(new long[] {
+        0xD5E29AC879334756L, 0xF1F7421CD6A06536L, 0x5E086D6468FECBF2L
+    }).toString();
+
+    /** => "exc.issuedIsNull" */
+    private static final String EXC_ISSUED_IS_NULL = new ObfuscatedString(new long[] {
+        0xAB8FF89F2DA6C32CL, 0x2A089A9CA80D970EL, 0xCF15F8842FCCD9D5L
+    }).toString();
+
+    /** => "exc.licenseIsNotYetValid" */
+    private static final String EXC_LICENSE_IS_NOT_YET_VALID = new ObfuscatedString(new long[] {
+        0x4B6BB2804EE7DDB1L, 0xD0BB0A33A41543C5L, 0x5FCEC6DF3725CEE4L,
+        0xA165775BBD625344L
+    }).toString();
+
+    /** => "exc.licenseHasExpired" */
+    private static final String EXC_LICENSE_HAS_EXPIRED = new ObfuscatedString(new long[] {
+        0xDE2B2A7ACD6DA6DL, 0x9EE12DDECB3D4C0DL, 0xB3CF760B522E8688L,
+        0x316BD3E92C17CC40L
+    }).toString();
+
+    /** => "exc.consumerTypeIsNull" */
+    private static final String EXC_CONSUMER_TYPE_IS_NULL = new ObfuscatedString(new long[] {
+        0xD29019F7B1D95C66L, 0xE859C44ACC3EB2FEL, 0xF041027C9003B031L,
+        0x27E84AD8870D6063L
+    }).toString();
+
+    /** => "exc.consumerTypeIsNotUser" */
+    private static final String EXC_CONSUMER_TYPE_IS_NOT_USER = new ObfuscatedString(new long[] {
+        0xCE99D49CE98D1E47L, 0x7A3BA300A7DFCEABL, 0x2D2E4B624AD7C4E0L,
+        0x2C86A28A075E71C6L, 0x79BCB920E5FB351DL
+    }).toString();
+
+    /** => "exc.consumerAmountIsNotOne" */
+    private static final String EXC_CONSUMER_AMOUNT_IS_NOT_ONE = new ObfuscatedString(new long[] {
+        0x5F20CBB98126BB0AL, 0xE8BB696B25D24011L, 0x435CC3AA7263BAE7L,
+        0x9DA3066F501717E4L, 0x62FFA4899FBBA3F8L
+    }).toString();
+
+    /** => "exc.consumerAmountIsNotPositive" */
+    private static final String EXC_CONSUMER_AMOUNT_IS_NOT_POSITIVE = new ObfuscatedString(new long[] {
+        0xB14EB6259B4D7249L, 0xCD02F577511528D8L, 0x39B8CF1E258756DDL,
+        0x67488F05891DF916L, 0x4256DE0CFFF62DCAL
+    }).toString();
+
+    /** Returns zero. */
+    public int getCost() {
+        return 0;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A bounded pool of raw (i.e. {@code nowrap}) {@link Deflater}s and
+ * {@link Inflater}s which is used by the {@link KeyCompression}s in order to
+ * avoid allocating and releasing a native zlib stream for each license key
+ * which gets created, installed or verified.
+ * <p>
+ * Each zlib stream holds some native memory (in the order of a few hundred
+ * kilobytes for a {@code Deflater} and some ten kilobytes for an
+ * {@code Inflater}) which is not accounted for in the Java heap.
+ * This class provides some counters in order to monitor these objects:
+ * The number of <em>live</em> objects is the number of objects which have
+ * been created but not yet ended, i.e. which still hold native memory.
+ * Objects which get returned to a full pool get ended immediately.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+public final class ZlibPool {
+
+    /** The maximum number of idle objects of each kind in the pool. */
+    public static final int MAX_IDLE
+            = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private static final ArrayDeque<Deflater> deflaters = new ArrayDeque<>();
+    private static final ArrayDeque<Inflater> inflaters = new ArrayDeque<>();
+
+    private static final AtomicLong deflatersCreated = new AtomicLong();
+    private static final AtomicLong deflatersEnded = new AtomicLong();
+    private static final AtomicLong deflatersBorrowed = new AtomicLong();
+    private static final AtomicLong inflatersCreated = new AtomicLong();
+    private static final AtomicLong inflatersEnded = new AtomicLong();
+    private static final AtomicLong inflatersBorrowed = new AtomicLong();
+
+    /** You cannot instantiate this class. */
+    private ZlibPool() { }
+
+    /**
+     * Borrows a raw deflater with the given compression level from the pool.
+     * The deflater must get returned by calling
+     * {@link #release(Deflater)} exactly once.
+     */
+    static Deflater deflater(final int level) {
+        deflatersBorrowed.incrementAndGet();
+        Deflater def;
+        synchronized (deflaters) {
+            def = deflaters.pollFirst();
+        }
+        if (null == def) {
+            def = new Deflater(level, true);
+            deflatersCreated.incrementAndGet();
+        } else {
+            def.setLevel(level);
+        }
+        return def;
+    }
+
+    /**
+     * Returns the given deflater to the pool or ends it if the pool is full.
+     */
+    static void release(final Deflater def) {
+        def.reset();
+        synchronized (deflaters) {
+            if (deflaters.size() < MAX_IDLE) {
+                deflaters.addFirst(def);
+                return;
+            }
+        }
+        def.end();
+        deflatersEnded.incrementAndGet();
+    }
+
+    /**
+     * Borrows a raw inflater from the pool.
+     * The inflater must get returned by calling
+     * {@link #release(Inflater)} exactly once.
+     */
+    static Inflater inflater() {
+        inflatersBorrowed.incrementAndGet();
+        Inflater inf;
+        synchronized (inflaters) {
+            inf = inflaters.pollFirst();
+        }
+        if (null == inf) {
+            inf = new Inflater(true);
+            inflatersCreated.incrementAndGet();
+        }
+        return inf;
+    }
+
+    /**
+     * Returns the given inflater to the pool or ends it if the pool is full.
+     */
+    static void release(final Inflater inf) {
+        inf.reset();
+        synchronized (inflaters) {
+            if (inflaters.size() < MAX_IDLE) {
+                inflaters.addFirst(inf);
+                return;
+            }
+        }
+        inf.end();
+        inflatersEnded.incrementAndGet();
+    }
+
+    /** Returns the total number of deflaters created by this pool. */
+    public static long getDeflatersCreated() {
+        return deflatersCreated.get();
+    }
+
+    /** Returns the total number of deflaters ended by this pool. */
+    public static long getDeflatersEnded() {
+        return deflatersEnded.get();
+    }
+
+    /** Returns the total number of deflaters borrowed from this pool. */
+    public static long getDeflatersBorrowed() {
+        return deflatersBorrowed.get();
+    }
+
+    /**
+     * Returns the number of deflaters which currently hold native memory,
+     * whether they are idle in this pool or borrowed from it.
+     */
+    public static long getDeflatersLive() {
+        return deflatersCreated.get() - deflatersEnded.get();
+    }
+
+    /** Returns the number of deflaters which are currently idle in this pool. */
+    public static int getDeflatersIdle() {
+        synchronized (deflaters) {
+            return deflaters.size();
+        }
+    }
+
+    /** Returns the total number of inflaters created by this pool. */
+    public static long getInflatersCreated() {
+        return inflatersCreated.get();
+    }
+
+    /** Returns the total number of inflaters ended by this pool. */
+    public static long getInflatersEnded() {
+        return inflatersEnded.get();
+    }
+
+    /** Returns the total number of inflaters borrowed from this pool. */
+    public static long getInflatersBorrowed() {
+        return inflatersBorrowed.get();
+    }
+
+    /**
+     * Returns the number of inflaters which currently hold native memory,
+     * whether they are idle in this pool or borrowed from it.
+     */
+    public static long getInflatersLive() {
+        return inflatersCreated.get() - inflatersEnded.get();
+    }
+
+    /** Returns the number of inflaters which are currently idle in this pool. */
+    public static int getInflatersIdle() {
+        synchronized (inflaters) {
+            return inflaters.size();
+        }
+    }
+}
@@ -10,14 +10,26 @@ import de.schlichtherle.license.LicenseContent;
 import de.schlichtherle.license.LicenseNotary;
 import de.schlichtherle.license.NoLicenseInstalledException;
 import de.schlichtherle.util.ObfuscatedString;
+import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.GenericCertificateIntegrityException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
-import java.util.Calendar;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
 import javax.security.auth.x500.X500Principal;
 
 /**
  * Extends {@link de.schlichtherle.license.LicenseManager} in order to provide
  * additional functionality required to manage a free trial period (FTP).
  * <LicenseParam>
+ * An application may call {@link #verifyAsync()} at startup in order to
+ * create and install an FTP license key in the background, so that the first
+ * call to {@link #verify()} on its critical path doesn't need to sign it.
+ * <p>
  * This class is thread safe.
  *
  * @author Christian Schlichtherle
@@ -39,6 +51,27 @@ public class LicenseManager extends de.schlichtherle.license.LicenseManager {
         0x73F69B7ABA25F620L, 0x40BA225C709D724EL
     }).toString(); /* => "ftpDays" */
 
+    private static final String PREFS_USER_ROOT = new ObfuscatedString(new long[] {
+        0xD3C1A9370CBF2C1DL, 0x5FE2E1E32B64A91EL, 0xB4AAAE8F618670D8L,
+        0x8E98C0358D120492L
+    }).toString(); /* => "java.util.prefs.userRoot" */
+
+    private static final String USER_HOME = new ObfuscatedString(new long[] {
+        0xF2E911F5A70A1A54L, 0x20DF08AE78D93050L, 0x18174CF398B21CE5L
+    }).toString(); /* => "user.home" */
+
+    private static final String LOCK_FILE = new ObfuscatedString(new long[] {
+        0x1B796931E079F0FDL, 0x4423281A0B97BC1BL, 0xE5098CB01745D1AFL,
+        0x1EF1FF44403E9D1DL
+    }).toString(); /* => ".truelicense-ftp.lock" */
+
+    /**
+     * The lock for creating FTP license keys in this JVM.
+     * This also guards the lock file, which can't get locked twice by the
+     * same JVM.
+     */
+    private static final Object lock = new Object();
+
     private LicenseNotary ftpNotary;
 
     private static final String CN_FTP_USER = CN + Resources.getString(
@@ -109,38 +142,168 @@ public class LicenseManager extends de.schlichtherle.license.LicenseManager {
         super.setLicenseParam(p);
     }
 
+    /**
+     * Decrypts, decompresses, decodes and verifies the current license key,
+     * validates its license content and returns it.
+     * The current license key is accepted if it has been signed with the
+     * key of the given license notary or with the key of the
+     * {@linkplain #getFTPLicenseNotary() FTP license notary}.
+     * If no license key is installed and the consumer is eligible for an
+     * FTP license, an FTP license key gets created and installed.
+     * <p>
+     * Creating an FTP license key is guarded by a lock which is shared by
+     * all license managers in this JVM and by a lock on an empty file which
+     * is shared with other processes of the same user on this host.
+     * The lock file is named {@code .truelicense-ftp.lock} and resides in
+     * the directory of the user preferences, i.e. the value of the system
+     * property {@code java.util.prefs.userRoot} or else {@code user.home}.
+     * There is only one lock file per user, which is reused for all subjects
+     * and preferences nodes and never deleted.
+     * Note that this applies to system preferences nodes, too, so processes
+     * of different users are <em>not</em> serialized when creating an FTP
+     * license key in a system preferences node.
+     * Once the locks are acquired, the preferences node gets flushed and
+     * synchronized with its backing store and checked again, so that an FTP
+     * license key which has been created by another process gets verified
+     * instead of creating another one.
+     * If the lock file cannot get opened or the preferences node cannot get
+     * synchronized, then only the lock in this JVM applies.
+     * Note that the file based preferences implementation of the JRE may
+     * still lose an FTP license key created by another process if the
+     * preferences node didn't exist yet when it was obtained by this
+     * process, so that another FTP license key gets created.
+     *
+     * @see #verifyInstalled(GenericCertificate, LicenseNotary)
+     */
     protected synchronized LicenseContent verify(final LicenseNotary notary)
     throws Exception {
-        try {
+        if (null != getCertificate() || null != getLicenseKey())
             return super.verify(notary);
-        } catch (Exception exc) {
-            // Checking a regular license failed, now check for an FTP license.
-
-            // Init.
-            final LicenseParam param = (LicenseParam) getLicenseParam();
-            final LicenseNotary ftpNotary = getFTPLicenseNotary();
-
-            // Check FTP license key suspect.
-            final byte[] key = getLicenseKey();
-            if (key != null)
-                return super.verify(ftpNotary);
-
-            // No license key installed:
-            // Check if the consumer is eligible for an FTP license.
-            if (!param.isFTPEligible())
-                throw new NoLicenseInstalledException(param.getSubject());
-            
-            // Create and install an FTP license key.
-            LicenseContent content = param.createFTPLicenseContent();
-            content.setNotAfter(ftpNotAfter(param.getFTPDays())); // enforce expire date
-            content = install(create(content, ftpNotary), ftpNotary); // reassign because of clone
-            param.removeFTPEligibility();
-            param.ftpGranted(content);
-
-            return content; // content of FTP license
+
+        // No license key installed:
+        // Acquire the locks and check again.
+        final LicenseParam param = (LicenseParam) getLicenseParam();
+        final Preferences prefs = param.getPreferences();
+        synchronized (lock) {
+            final FileLock fileLock = lockFile();
+            try {
+                flush(prefs); // see sync(Preferences)
+                sync(prefs);
+                if (null != getLicenseKey())
+                    return super.verify(notary);
+
+                // Check if the consumer is eligible for an FTP license.
+                if (!param.isFTPEligible())
+                    throw new NoLicenseInstalledException(param.getSubject());
+
+                // Create and install an FTP license key.
+                final LicenseNotary ftpNotary = getFTPLicenseNotary();
+                LicenseContent content = param.createFTPLicenseContent();
+                content.setNotAfter(ftpNotAfter(param.getFTPDays())); // enforce expire date
+                content = install(create(content, ftpNotary), ftpNotary); // reassign because of clone
+                flush(prefs);
+                param.removeFTPEligibility();
+                param.ftpGranted(content);
+
+                return content; // content of FTP license
+            } finally {
+                if (null != fileLock)
+                    fileLock.channel().close(); // releases the lock
+            }
         }
     }
 
+    /**
+     * Acquires an exclusive lock on an empty file in the directory of the
+     * user preferences which is shared with other processes of the same
+     * user on this host.
+     * The caller must hold the lock in this JVM.
+     *
+     * @return The file lock or {@code null} if the file cannot get opened,
+     *         in which case only the lock in this JVM applies.
+     */
+    private static FileLock lockFile() throws IOException {
+        final FileChannel channel;
+        try {
+            final String dir = System.getProperty(PREFS_USER_ROOT,
+                    System.getProperty(USER_HOME));
+            channel = FileChannel.open(
+                    Paths.get(dir, LOCK_FILE),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+        } catch (IOException ex) {
+            return null;
+        } catch (SecurityException ex) {
+            return null;
+        }
+        boolean ok = false;
+        try {
+            final FileLock lock = channel.lock();
+            ok = true;
+            return lock;
+        } finally {
+            if (!ok)
+                channel.close();
+        }
+    }
+
+    /**
+     * Synchronizes the given preferences node with its backing store in
+     * order to see the license key which may have been stored by another
+     * process.
+     * The node gets synchronized twice because the file system based
+     * preferences implementation of the JRE ignores external modifications
+     * on the first synchronization after another process has synchronized
+     * any user preferences.
+     * Worse, if the node has pending changes, e.g. because it has just been
+     * created, then this first synchronization overwrites the external
+     * modifications, which is why the node gets flushed first.
+     * A failure is ignored, so that the cached preferences apply.
+     */
+    private static void sync(final Preferences prefs) {
+        try {
+            prefs.sync();
+            prefs.sync();
+        } catch (BackingStoreException ignored) {
+        }
+    }
+
+    /**
+     * Flushes the given preferences node to its backing store, so that
+     * other processes can see the created license key.
+     * A failure is ignored, so that the license key is still installed in
+     * this JVM.
+     */
+    private static void flush(final Preferences prefs) {
+        try {
+            prefs.flush();
+        } catch (BackingStoreException ignored) {
+        }
+    }
+
+    /**
+     * Verifies the digital signature of the certificate of the current
+     * license key with the key of the given license notary first and with
+     * the key of the {@linkplain #getFTPLicenseNotary() FTP license notary}
+     * second.
+     * The license key is decrypted, decompressed and decoded only once for
+     * both checks and no exception is thrown unless both checks fail.
+     *
+     * @throws GenericCertificateIntegrityException if neither signature
+     *         matches.
+     */
+    protected synchronized void verifyInstalled(
+            final GenericCertificate certificate,
+            final LicenseNotary notary)
+    throws Exception {
+        if (notary.tryVerify(certificate))
+            return;
+        final LicenseNotary ftpNotary = getFTPLicenseNotary();
+        if (ftpNotary != notary && ftpNotary.tryVerify(certificate))
+            return;
+        throw new GenericCertificateIntegrityException();
+    }
+
     protected synchronized void initialize(final LicenseContent content) {
         if (content.getHolder() == null)
             content.setHolder(new X500Principal(CN_FTP_USER));
@@ -158,22 +321,21 @@ public class LicenseManager extends de.schlichtherle.license.LicenseManager {
      */
     protected synchronized LicenseNotary getFTPLicenseNotary()
     throws Exception {
-        if (ftpNotary == null)
+        if (ftpNotary == null) {
             ftpNotary = new LicenseNotary(
                     ((LicenseParam) getLicenseParam()).getFTPKeyStoreParam());
+            ftpNotary.setMetrics(getMetrics());
+        }
         
         return ftpNotary;
     }
 
     /**
      * Returns the date after which a free trial period license certificate
-     * should expire, based on {@code ftpDays}.
+     * should expire, based on {@code ftpDays} and the
+     * {@linkplain #getClock() clock}.
      */
     protected Date ftpNotAfter(int ftpDays) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(midnight());
-        cal.add(Calendar.DATE, ftpDays);
-        
-        return cal.getTime();
+        return midnight(getClock(), ftpDays);
     }
 }
@@ -0,0 +1,21 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An event for encoding, compressing and encrypting a license certificate.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@Name("de.schlichtherle.license.Cert2Key") // NOI18N
+@Label("License Key Encryption") // NOI18N
+@Description("Encoding, compressing and encrypting a license certificate.") // NOI18N
+final class Cert2KeyEvent extends LicenseEvent {
+}
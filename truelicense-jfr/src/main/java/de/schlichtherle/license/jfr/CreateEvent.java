@@ -0,0 +1,21 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An event for creating a license key.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@Name("de.schlichtherle.license.Create") // NOI18N
+@Label("License Key Creation") // NOI18N
+@Description("Creating a license key.") // NOI18N
+final class CreateEvent extends LicenseEvent {
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import de.schlichtherle.license.LicenseMetricsListener;
+import de.schlichtherle.license.LicenseStage;
+
+/**
+ * Maps the stages of creating, installing and verifying license keys to
+ * license events.
+ * Stages without a license event are ignored.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+final class FlightRecorderListener implements LicenseMetricsListener {
+
+    public Object begin(final String subject, final LicenseStage stage) {
+        final LicenseEvent event = newEvent(stage);
+        if (null == event || !event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    public void end(
+            final Object context,
+            final String subject,
+            final LicenseStage stage,
+            final long nanos,
+            final long bytes,
+            final boolean succeeded) {
+        LicenseEvent event = (LicenseEvent) context;
+        if (null == event) {
+            // Interleaved stages don't begin.
+            if (LicenseStage.ENCODE != stage && LicenseStage.DECODE != stage)
+                return;
+            event = newEvent(stage);
+            if (!event.isEnabled())
+                return;
+        } else {
+            event.end();
+        }
+        if (!event.shouldCommit())
+            return;
+        event.subject = subject;
+        event.bytes = bytes;
+        event.succeeded = succeeded;
+        event.stageDuration = nanos;
+        if (event instanceof VerifyEvent)
+            ((VerifyEvent) event).cacheHit = LicenseStage.VERIFY_CACHED == stage;
+        else if (event instanceof PersistenceLoadEvent)
+            ((PersistenceLoadEvent) event).stage = stage.name();
+        event.commit();
+    }
+
+    /**
+     * Returns a new license event for the given stage or {@code null} if
+     * there is no license event for it.
+     */
+    private static LicenseEvent newEvent(final LicenseStage stage) {
+        switch (stage) {
+            case CREATE:
+                return new CreateEvent();
+            case INSTALL:
+                return new InstallEvent();
+            case VERIFY:
+            case VERIFY_CACHED:
+                return new VerifyEvent();
+            case CERT2KEY:
+                return new Cert2KeyEvent();
+            case KEY2CERT:
+                return new Key2CertEvent();
+            case VERIFY_SIGNATURE:
+                return new SignatureVerifyEvent();
+            case DECODE:
+            case DECODE_CONTENT:
+                return new PersistenceLoadEvent();
+            case ENCODE:
+                return new PersistenceStoreEvent();
+            default:
+                return null;
+        }
+    }
+}
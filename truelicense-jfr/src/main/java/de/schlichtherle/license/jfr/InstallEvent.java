@@ -0,0 +1,21 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An event for installing a license key.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@Name("de.schlichtherle.license.Install") // NOI18N
+@Label("License Key Installation") // NOI18N
+@Description("Installing a license key.") // NOI18N
+final class InstallEvent extends LicenseEvent {
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The base class of all license events.
+ * All license events are disabled by default and don't record a stack
+ * trace, so they need to be enabled in the settings of a recording, e.g.
+ * in a custom {@code .jfc} file or by calling
+ * {@code recording.enable("de.schlichtherle.license.Verify")}.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@Category("TrueLicense") // NOI18N
+@Enabled(false)
+@StackTrace(false)
+abstract class LicenseEvent extends Event {
+
+    @Label("Subject") // NOI18N
+    String subject;
+
+    @Label("Bytes") // NOI18N
+    @DataAmount
+    long bytes;
+
+    @Label("Succeeded") // NOI18N
+    boolean succeeded;
+
+    /**
+     * The duration as measured by TrueLicense.
+     * For stages which are interleaved with others, this is the only
+     * duration because the event gets committed when the enclosing stage
+     * ends.
+     */
+    @Label("Stage Duration") // NOI18N
+    @Timespan(Timespan.NANOSECONDS)
+    long stageDuration;
+}
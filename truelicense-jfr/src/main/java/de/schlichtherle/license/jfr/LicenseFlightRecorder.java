@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import de.schlichtherle.license.LicenseMetrics;
+import java.util.Arrays;
+import java.util.List;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+/**
+ * Emits Java Flight Recorder events for creating, installing and verifying
+ * license keys.
+ * <p>
+ * After calling {@link #register()}, the following events are available,
+ * all of them in the category {@code TrueLicense}:
+ * <ul>
+ * <li>{@code de.schlichtherle.license.Create}
+ * <li>{@code de.schlichtherle.license.Install}
+ * <li>{@code de.schlichtherle.license.Verify}, with a {@code cacheHit} field
+ * <li>{@code de.schlichtherle.license.Cert2Key}
+ * <li>{@code de.schlichtherle.license.Key2Cert}
+ * <li>{@code de.schlichtherle.license.SignatureVerify}
+ * <li>{@code de.schlichtherle.license.PersistenceLoad}
+ * <li>{@code de.schlichtherle.license.PersistenceStore}
+ * </ul>
+ * Each event carries the licensing subject, the number of bytes processed
+ * and whether the stage succeeded.
+ * <p>
+ * The events are disabled by default.
+ * As long as no running recording enables any of them, this class doesn't
+ * install its {@link de.schlichtherle.license.LicenseMetricsListener}, so
+ * licensing costs nothing extra.
+ * Whenever the state of a recording changes, this class adds or removes its
+ * listener, leaving any other listeners installed.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+public final class LicenseFlightRecorder {
+
+    private static final List<Class<? extends Event>> EVENTS = Arrays.asList(
+            CreateEvent.class,
+            InstallEvent.class,
+            VerifyEvent.class,
+            Cert2KeyEvent.class,
+            Key2CertEvent.class,
+            SignatureVerifyEvent.class,
+            PersistenceLoadEvent.class,
+            PersistenceStoreEvent.class);
+
+    private static final FlightRecorderListener listener
+            = new FlightRecorderListener();
+
+    private static final jdk.jfr.FlightRecorderListener recorderListener
+            = new jdk.jfr.FlightRecorderListener() {
+                public void recordingStateChanged(Recording recording) {
+                    update();
+                }
+            };
+
+    private static boolean registered;
+
+    private LicenseFlightRecorder() {
+    }
+
+    /**
+     * Registers the license events with the flight recorder and starts
+     * watching recordings, so that the events get emitted whenever a
+     * running recording enables them.
+     * Calling this method again has no effect.
+     */
+    public static synchronized void register() {
+        if (registered)
+            return;
+        for (final Class<? extends Event> event : EVENTS)
+            FlightRecorder.register(event);
+        FlightRecorder.addListener(recorderListener);
+        registered = true;
+        update();
+    }
+
+    /**
+     * Stops emitting license events and unregisters them from the flight
+     * recorder.
+     * Calling this method again has no effect.
+     */
+    public static synchronized void unregister() {
+        if (!registered)
+            return;
+        registered = false;
+        FlightRecorder.removeListener(recorderListener);
+        update();
+        for (final Class<? extends Event> event : EVENTS)
+            FlightRecorder.unregister(event);
+    }
+
+    /**
+     * Adds the listener if any license event is enabled and removes it
+     * otherwise.
+     */
+    private static synchronized void update() {
+        boolean enabled = false;
+        if (registered)
+            for (final Class<? extends Event> event : EVENTS)
+                enabled |= EventType.getEventType(event).isEnabled();
+        if (enabled)
+            LicenseMetrics.addListener(listener);
+        else
+            LicenseMetrics.removeListener(listener);
+    }
+}
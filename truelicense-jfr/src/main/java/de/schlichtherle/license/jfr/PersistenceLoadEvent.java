@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An event for decoding a license certificate or license content from XML.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@Name("de.schlichtherle.license.PersistenceLoad") // NOI18N
+@Label("License XML Decoding") // NOI18N
+@Description("Decoding a license certificate or license content from XML.") // NOI18N
+final class PersistenceLoadEvent extends LicenseEvent {
+
+    @Label("Stage") // NOI18N
+    String stage;
+}
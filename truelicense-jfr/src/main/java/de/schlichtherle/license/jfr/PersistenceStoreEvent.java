@@ -0,0 +1,21 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An event for encoding a license certificate to XML.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@Name("de.schlichtherle.license.PersistenceStore") // NOI18N
+@Label("License XML Encoding") // NOI18N
+@Description("Encoding a license certificate to XML.") // NOI18N
+final class PersistenceStoreEvent extends LicenseEvent {
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An event for verifying the signature of a license certificate.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@Name("de.schlichtherle.license.SignatureVerify") // NOI18N
+@Label("License Signature Verification") // NOI18N
+@Description("Verifying the signature of a license certificate.") // NOI18N
+final class SignatureVerifyEvent extends LicenseEvent {
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.license.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An event for verifying the installed or a given license key.
+ *
+ * @author Christian Schlichtherle
+ * @version $Id$
+ */
+@Name("de.schlichtherle.license.Verify") // NOI18N
+@Label("License Key Verification") // NOI18N
+@Description("Verifying the installed or a given license key.") // NOI18N
+final class VerifyEvent extends LicenseEvent {
+
+    @Label("Cache Hit") // NOI18N
+    boolean cacheHit;
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package de.schlichtherle.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Writes files atomically and durably.
+ * The content of each target file is written to a new temporary file in the
+ * same directory first.
+ * When {@link #commit() committed}, each temporary file gets forced to the
+ * storage device and then atomically moved to its target file, so that any
+ * reader either sees the complete old or the complete new content of the
+ * target file, even if the JVM or the operating system crashes in between.
+ * Finally, the directories of the target files are forced to the storage
+ * device in order to make the moves durable, too.
+ * <p>
+ * If a target file exists, its POSIX permissions or its ACL get copied to
+ * the temporary file, so that replacing the target file keeps them.
+ * Its owner and group get copied, too, if the process is privileged to
+ * change them - otherwise the temporary file keeps the owner and group of
+ * the process.
+ * Any other file attributes are not retained.
+ * <p>
+ * Note that atomicity depends on the file system:
+ * If it doesn't support atomic moves, then each temporary file gets moved
+ * to its target file with {@link StandardCopyOption#REPLACE_EXISTING}
+ * instead.
+ * Because the temporary file is in the same directory, this is still a
+ * simple rename on most file systems, but it's not guaranteed to be atomic,
+ * so a reader may briefly see no target file or a crash may leave the
+ * temporary file behind.
+ * <p>
+ * An instance can be used for a single file or as a <em>group commit</em> for
+ * any number of files: In the latter case, all files are written before
+ * a single call to {@code commit()}, so that each directory only needs to be
+ * forced once for the entire group.
+ * Note that the temporary files are kept open until they are committed or
+ * {@link #abort() aborted}, so the size of a group is limited by the number
+ * of file descriptors available to the process.
+ * <p>
+ * A typical usage is the following:
+ * {@code <pre>
+ * AtomicFileWriter writer = new AtomicFileWriter();
+ * try {
+ *     OutputStream out = writer.newOutputStream(file);
+ *     try {
+ *         // write content to out...
+ *     } finally {
+ *         out.close();
+ *     }
+ *     writer.commit();
+ * } finally {
+ *     writer.abort(); // no-op if committed
+ * }
+ * </pre>}
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class AtomicFileWriter {
+
+    private static final Random random = new Random();
+
+    /** The pending temporary files in the order of their creation. */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Returns a new output stream for writing the content of the given
+     * target file to a new temporary file in the same directory.
+     * Closing the returned stream does <em>not</em> close the temporary file
+     * - call {@link #commit()} or {@link #abort()} to do this.
+     *
+     * @param  target the target file - may <em>not</em> be {@code null}.
+     * @return A new output stream for writing the content of the target
+     *         file.
+     * @throws NullPointerException if {@code target} is {@code null}.
+     * @throws IOException if the temporary file cannot be created.
+     */
+    public synchronized OutputStream newOutputStream(final File target)
+    throws IOException {
+        final File file = target.getAbsoluteFile();
+        final Path dir = file.getParentFile().toPath();
+        FileChannel channel;
+        Path temp;
+        while (true) {
+            temp = dir.resolve(file.getName() + '~'
+                    + Integer.toHexString(random.nextInt()));
+            try {
+                channel = FileChannel.open(temp,
+                        StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+                break;
+            } catch (final FileAlreadyExistsException retry) {
+            }
+        }
+        final Entry entry = new Entry(channel, temp, file.toPath());
+        boolean ok = false;
+        try {
+            copyAttributes(entry.target, temp);
+            ok = true;
+        } finally {
+            if (!ok)
+                delete(entry);
+        }
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Copies the POSIX permissions, owner and group or the ACL of the given
+     * target file to the given temporary file if the target file exists.
+     * Changing the owner or group is skipped if the process is not
+     * privileged to do so.
+     */
+    private static void copyAttributes(final Path target, final Path temp)
+    throws IOException {
+        if (!Files.exists(target))
+            return;
+        final PosixFileAttributeView posix = Files.getFileAttributeView(
+                temp, PosixFileAttributeView.class);
+        if (null != posix) {
+            final PosixFileAttributes attributes = Files.readAttributes(
+                    target, PosixFileAttributes.class);
+            try {
+                posix.setGroup(attributes.group());
+                posix.setOwner(attributes.owner());
+            } catch (final IOException notPrivileged) {
+            }
+            posix.setPermissions(attributes.permissions());
+            return;
+        }
+        final AclFileAttributeView acl = Files.getFileAttributeView(
+                temp, AclFileAttributeView.class);
+        if (null != acl) {
+            final AclFileAttributeView source = Files.getFileAttributeView(
+                    target, AclFileAttributeView.class);
+            try {
+                acl.setOwner(source.getOwner());
+            } catch (final IOException notPrivileged) {
+            }
+            acl.setAcl(source.getAcl());
+        }
+    }
+
+    /**
+     * Forces all pending temporary files to the storage device, atomically
+     * moves them to their target files and forces the directories of the
+     * target files to the storage device.
+     * If the file system doesn't support atomic moves, then the temporary
+     * files get moved non-atomically, replacing their target files.
+     * If this method fails, all pending temporary files which have not yet
+     * been moved get deleted.
+     *
+     * @throws IOException on any I/O error.
+     */
+    public synchronized void commit() throws IOException {
+        try {
+            for (final Entry entry : entries) {
+                entry.channel.force(true);
+                entry.channel.close();
+            }
+            final Set<Path> dirs = new LinkedHashSet<>();
+            while (!entries.isEmpty()) {
+                final Entry entry = entries.get(0);
+                move(entry.temp, entry.target);
+                entries.remove(0);
+                dirs.add(entry.target.getParent());
+            }
+            for (final Path dir : dirs)
+                force(dir);
+        } finally {
+            abort();
+        }
+    }
+
+    private static void move(final Path temp, final Path target)
+    throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException ex) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void force(final Path dir) {
+        try {
+            final FileChannel channel = FileChannel.open(dir,
+                    StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (final IOException notSupportedByPlatform) {
+            // E.g. on Windows, directories cannot be opened.
+        }
+    }
+
+    /**
+     * Closes and deletes the pending temporary file for the given output
+     * stream, so that it doesn't get committed.
+     * The target file remains unchanged.
+     * This method is a no-op if the given output stream has not been
+     * returned by {@link #newOutputStream(File)} or has already been
+     * committed or aborted.
+     *
+     * @param out the output stream returned by
+     *        {@link #newOutputStream(File)}.
+     */
+    public synchronized void discard(final OutputStream out) {
+        if (entries.remove(out))
+            delete((Entry) out);
+    }
+
+    /**
+     * Closes and deletes all pending temporary files.
+     * The target files remain unchanged.
+     * This method is a no-op if there are no pending temporary files,
+     * e.g. after a successful {@link #commit()}.
+     */
+    public synchronized void abort() {
+        for (final Entry entry : entries)
+            delete(entry);
+        entries.clear();
+    }
+
+    private static void delete(final Entry entry) {
+        try {
+            entry.channel.close();
+        } catch (final IOException weDontCare) {
+        }
+        try {
+            Files.deleteIfExists(entry.temp);
+        } catch (final IOException weDontCare) {
+        }
+    }
+
+    /**
+     * A pending temporary file which serves as an output stream, too.
+     * Closing the stream does not close the temporary file.
+     */
+    private static final class Entry extends OutputStream {
+        final FileChannel channel;
+        final Path temp;
+        final Path target;
+        boolean closed;
+
+        Entry(final FileChannel channel, final Path temp, final Path target) {
+            this.channel = channel;
+            this.temp = temp;
+            this.target = target;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Stream closed!"); // NOI18N
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -5,11 +5,12 @@
 package de.schlichtherle.xml;
 
 import java.beans.*;
+import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.security.*;
-import org.apache.commons.codec.binary.Base64;
+import java.util.Base64;
 
 /**
  * This non-visual JavaBean is a factory for authenticated runtime objects
@@ -22,6 +23,11 @@ import org.apache.commons.codec.binary.Base64;
  * encoded representation of an arbitrary object in the "encoded"
  * property and a Base64 immutable string representation of the object's
  * corresponding digital signature in the "signature" property.
+ * Internally, the encoded representation is held as the canonical UTF-8
+ * byte array which has been signed or verified, so that signing, verifying
+ * and decoding the content do not need to convert it from and to a string.
+ * The string view of the "encoded" property is derived lazily when it's
+ * first requested, e.g. by {@link XMLEncoder} or {@link ObjectOutputStream}.
  * The selection of this representation form and the design of this class
  * as a plain JavaBean allows its instances to be serialized using either
  * this package's {@link PersistenceService}, JDK's
@@ -153,8 +159,8 @@ import org.apache.commons.codec.binary.Base64;
 public final class GenericCertificate implements Serializable, XMLConstants {
 
     private static final long serialVersionUID = 6247620498526484734L;
-    private static final String BASE64_CHARSET = "US-ASCII"; // NOI18N
     private static final String SIGNATURE_ENCODING = "US-ASCII/Base64"; // NOI18N
+    private static final String FINGERPRINT_ALGORITHM = "SHA-256"; // NOI18N
     
     /**
      * Holds value of property locked - is not serializable!!!
@@ -162,10 +168,31 @@ public final class GenericCertificate implements Serializable, XMLConstants {
     private transient volatile boolean locked;
 
     /**
-     * Holds value of property encoded.
+     * Holds the string view of the property encoded.
+     * This is {@code null} if it hasn't been derived from
+     * {@link #encodedBytes} yet.
      */
     private String encoded;
 
+    /**
+     * Holds the canonical UTF-8 encoded bytes of the property encoded.
+     * This is {@code null} if it hasn't been derived from {@link #encoded}
+     * yet.
+     * Once set, the array is never modified, so it may be shared with copies
+     * of this certificate.
+     */
+    private transient byte[] encodedBytes;
+
+    /**
+     * Holds the fingerprint of this certificate.
+     * This is computed when this certificate gets locked, so it's safely
+     * published by the volatile write to {@link #locked}.
+     */
+    private transient byte[] fingerprint;
+
+    /** Holds the first eight bytes of {@link #fingerprint}. */
+    private transient long fingerprintPrefix;
+
     /**
      * Holds value of property signature.
      */
@@ -203,8 +230,11 @@ public final class GenericCertificate implements Serializable, XMLConstants {
      * @param cert the generic certificate to copy.
      */
     public GenericCertificate(final GenericCertificate cert) {
+        synchronized (cert) {
+            this.encoded = cert.encoded;
+            this.encodedBytes = cert.encodedBytes;
+        }
         try {
-            setEncoded(cert.getEncoded());
             setSignature(cert.getSignature());
             setSignatureAlgorithm(cert.getSignatureAlgorithm());
             setSignatureEncoding(cert.getSignatureEncoding());
@@ -279,22 +309,22 @@ public final class GenericCertificate implements Serializable, XMLConstants {
         try {
             // Encode the object to bytes and sign it.
             final byte[] beo = PersistenceService.store2ByteArray(content);
-            final String encoded = new String(beo, XML_CHARSET);
             signingEngine.initSign(signingKey);
             signingEngine.update(beo);
-            final byte[] b64es = Base64.encodeBase64(signingEngine.sign());
-            final String signature = new String(b64es, BASE64_CHARSET);
+            final String signature = Base64.getEncoder()
+                    .encodeToString(signingEngine.sign());
             final String algorithm = signingEngine.getAlgorithm();
 
             // Store results.
-            setEncoded(encoded);
+            setEncodedBytes(beo);
             setSignature(signature);
             setSignatureAlgorithm(algorithm);
             setSignatureEncoding(SIGNATURE_ENCODING); // NOI18N
-        } catch (UnsupportedEncodingException ex) {
-            throw new AssertionError(ex);
+            setFingerprint();
         } catch (SignatureException ex) {
             throw new AssertionError(ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new AssertionError(ex);
         }
 
         // Lock this certificate and notify property change listeners.
@@ -352,6 +382,45 @@ public final class GenericCertificate implements Serializable, XMLConstants {
             InvalidKeyException,
             SignatureException,
             GenericCertificateIntegrityException {
+        if (!tryVerify(verificationKey, verificationEngine))
+            throw new GenericCertificateIntegrityException();
+    }
+
+    /**
+     * Verifies the digital signature of the encoded content in this
+     * certificate and locks it if it matches.
+     * This method is equivalent to {@link #verify(PublicKey, Signature)}
+     * except that it returns {@code false} instead of throwing a
+     * {@link GenericCertificateIntegrityException} if the signature does
+     * not match, so that this certificate can get verified with another
+     * public key without using exceptions for control flow.
+     * 
+     * @param verificationKey The public key for verification
+     *        - may <em>not</em> be {@code null}.
+     * @param verificationEngine The signature verification engine
+     *        - may <em>not</em> be {@code null}.
+     * @return {@code true} if and only if the signature matches and this
+     *         certificate has been locked.
+     * 
+     * @throws NullPointerException If the preconditions for the parameters
+     *         do not hold.
+     * @throws GenericCertificateIsLockedException If this certificate is
+     *         already locked by signing or verifying it before.
+     *         Note that this is actually a subclass of
+     *         {@link PropertyVetoException}.
+     * @throws PropertyVetoException If locking the certifificate (and thus
+     *         verifying the object) is vetoed by any listener.
+     * @throws InvalidKeyException If the verification key is invalid.
+     * @throws SignatureException If signature verification failed.
+     */
+    public synchronized boolean tryVerify(
+            final PublicKey verificationKey,
+            final Signature verificationEngine)
+    throws  NullPointerException,
+            GenericCertificateIsLockedException,
+            PropertyVetoException,
+            InvalidKeyException,
+            SignatureException {
         // Check status.
         final PropertyChangeEvent evt = new PropertyChangeEvent(
                 this, "locked", Boolean.valueOf(locked), Boolean.TRUE); // NOI18N
@@ -366,25 +435,31 @@ public final class GenericCertificate implements Serializable, XMLConstants {
 
         try {
             // Get the byte encoded object and verify it.
-            final byte[] beo = encoded.getBytes(XML_CHARSET);
+            final byte[] beo = getEncodedBytes();
             verificationEngine.initVerify(verificationKey);
             verificationEngine.update(beo);
-            final byte[] b64ds = Base64.decodeBase64(
-                    signature.getBytes(BASE64_CHARSET));
+            // The MIME decoder ignores any line separators or other
+            // characters outside the Base64 alphabet, just like the codec
+            // which has been used in earlier versions.
+            final byte[] b64ds = Base64.getMimeDecoder().decode(signature);
             if (!verificationEngine.verify(b64ds))
-                throw new GenericCertificateIntegrityException();
+                return false;
             final String algorithm = verificationEngine.getAlgorithm();
 
             // Reset signature parameters.
             setSignatureAlgorithm(algorithm);
             setSignatureEncoding(SIGNATURE_ENCODING);
+            setFingerprint();
         } catch (UnsupportedEncodingException ex) {
             throw new AssertionError(ex);
+        } catch (IllegalArgumentException ex) {
+            return false;
         }
 
         // Lock this certificate and notify property change listeners.
         this.locked = true;
         firePropertyChange(evt);
+        return true;
     }
 
     /**
@@ -399,6 +474,74 @@ public final class GenericCertificate implements Serializable, XMLConstants {
         return this.locked;
     }
 
+    /**
+     * Computes the fingerprint of this certificate.
+     * This is the SHA-256 digest of the encoded content, the signature and
+     * the signature algorithm, each of them encoded in UTF-8 and terminated
+     * by a zero byte.
+     */
+    private void setFingerprint() throws UnsupportedEncodingException {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(FINGERPRINT_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError(ex);
+        }
+        md.update(getEncodedBytes());
+        md.update((byte) 0);
+        update(md, signature);
+        update(md, signatureAlgorithm);
+        final byte[] fingerprint = md.digest();
+        long prefix = 0;
+        for (int i = 0; i < 8; i++)
+            prefix = prefix << 8 | fingerprint[i] & 0xff;
+        this.fingerprint = fingerprint;
+        this.fingerprintPrefix = prefix;
+    }
+
+    private static void update(final MessageDigest md, final String s)
+    throws UnsupportedEncodingException {
+        if (null != s)
+            md.update(s.getBytes(XML_CHARSET));
+        md.update((byte) 0);
+    }
+
+    /**
+     * Returns a clone of the fingerprint of this certificate, which is a
+     * stable identity for its content and signature.
+     * The fingerprint is the SHA-256 digest of the encoded content, the
+     * signature and the signature algorithm, each of them encoded in UTF-8
+     * and terminated by a zero byte.
+     * It is computed only once when this certificate gets locked.
+     *
+     * @return A clone of the 32 bytes of the fingerprint.
+     * @throws GenericCertificateNotLockedException If this certificate has
+     *         not been signed or verified before.
+     * @see    #getFingerprintPrefix()
+     */
+    public byte[] getFingerprint()
+    throws GenericCertificateNotLockedException {
+        if (!locked) throw new GenericCertificateNotLockedException();
+        return fingerprint.clone();
+    }
+
+    /**
+     * Returns the first eight bytes of the fingerprint of this certificate
+     * as a big endian {@code long}, which is suitable as a key in hash
+     * tables for primitive keys.
+     * This method does not allocate any objects.
+     *
+     * @return The first eight bytes of the fingerprint.
+     * @throws GenericCertificateNotLockedException If this certificate has
+     *         not been signed or verified before.
+     * @see    #getFingerprint()
+     */
+    public long getFingerprintPrefix()
+    throws GenericCertificateNotLockedException {
+        if (!locked) throw new GenericCertificateNotLockedException();
+        return fingerprintPrefix;
+    }
+
     /**
      * Returns a clone of the certificate's content as it was signed or
      * verified before.
@@ -422,7 +565,7 @@ public final class GenericCertificate implements Serializable, XMLConstants {
     throws  GenericCertificateNotLockedException,
             PersistenceServiceException {
         if (!locked) throw new GenericCertificateNotLockedException();
-        return PersistenceService.load(encoded);
+        return PersistenceService.load(encodedBytes);
     }
 
     /**
@@ -432,9 +575,46 @@ public final class GenericCertificate implements Serializable, XMLConstants {
      * @return The value of the property {@code encoded}.
      */
     public synchronized String getEncoded()   {
+        if (null == encoded && null != encodedBytes) {
+            try {
+                encoded = new String(encodedBytes, XML_CHARSET);
+            } catch (UnsupportedEncodingException ex) {
+                throw new AssertionError(ex);
+            }
+        }
         return this.encoded;
     }
 
+    /**
+     * Returns the canonical UTF-8 encoded bytes of the property
+     * {@code encoded}, deriving them from its string view if required.
+     * The returned array must not be modified.
+     */
+    private byte[] getEncodedBytes() throws UnsupportedEncodingException {
+        if (null == encodedBytes)
+            encodedBytes = encoded.getBytes(XML_CHARSET);
+        return encodedBytes;
+    }
+
+    /**
+     * Sets the canonical UTF-8 encoded bytes of the property
+     * {@code encoded} without checking the lock status.
+     * The string view is only derived if there are any property change
+     * listeners to notify.
+     */
+    private void setEncodedBytes(final byte[] encodedBytes) {
+        if (null == propertyChangeSupport) {
+            this.encoded = null;
+            this.encodedBytes = encodedBytes;
+        } else {
+            final String oldEncoded = getEncoded();
+            this.encoded = null;
+            this.encodedBytes = encodedBytes;
+            firePropertyChange(new PropertyChangeEvent(
+                    this, "encoded", oldEncoded, getEncoded())); // NOI18N
+        }
+    }
+
     /**
      * Setter for the bound property {@code encoded}.
      *
@@ -449,14 +629,15 @@ public final class GenericCertificate implements Serializable, XMLConstants {
     throws GenericCertificateIsLockedException {
         // Check status.
         final PropertyChangeEvent evt = new PropertyChangeEvent(
-                this, "encoded", this.encoded, encoded); // NOI18N
+                this, "encoded", getEncoded(), encoded); // NOI18N
         if (locked) throw new GenericCertificateIsLockedException(evt);
         
         // Check parameters.
-        if (equals(this.encoded, encoded)) return;
+        if (equals(evt.getOldValue(), encoded)) return;
         
         //vetoableChangeSupport.fireVetoableChange(evt); // Incompatible to sign!
         this.encoded = encoded;
+        this.encodedBytes = null; // derived lazily
         firePropertyChange(evt);
     }
 
@@ -574,6 +755,16 @@ public final class GenericCertificate implements Serializable, XMLConstants {
         return a == b || null != a && a.equals(b);
     }
 
+    /**
+     * Derives the string view of the property {@code encoded} before
+     * serializing this certificate because it's the persistent form.
+     */
+    private synchronized void writeObject(final ObjectOutputStream out)
+    throws IOException {
+        getEncoded();
+        out.defaultWriteObject();
+    }
+
     //
     // Property handling methods.
     //
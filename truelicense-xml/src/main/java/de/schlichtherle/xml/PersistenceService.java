@@ -7,9 +7,21 @@ package de.schlichtherle.xml;
 import java.beans.*;
 import java.io.*;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provides a collection of static methods to support comfortable loading and
@@ -39,6 +51,12 @@ import java.util.Map;
  * deal with <em>any</em> kind of {@link Throwable}s throughout the course of
  * (de)serialization, even {@link OutOfMemoryError}s.
  * <p>
+ * The {@code storeAsync} and {@code loadAsync} methods run their blocking
+ * counterparts on the I/O {@link #getExecutor() executor} of this class and
+ * return a {@link CompletionStage} for the result, so that the calling thread
+ * doesn't stall while XML content gets encoded and written or read and
+ * decoded.
+ * <p>
  * This class is thread.safe.
  *
  * @see XMLEncoder
@@ -64,9 +82,122 @@ public class PersistenceService implements XMLConstants {
      */
     public static int BUFSIZE = DEFAULT_BUFSIZE;
 
+    /** The default number of threads of the I/O executor, which is {@value}. */
+    public static final int DEFAULT_IO_THREADS = 2;
+
+    /**
+     * The default capacity of the task queue of the I/O executor, which is
+     * {@value}.
+     */
+    public static final int DEFAULT_IO_QUEUE_SIZE = 64;
+
+    /** The executor for the asynchronous methods - lazily initialized. */
+    private static Executor executor;
+
     /** You cannot instantiate this class. */
     private PersistenceService() { }
 
+    /**
+     * Returns the executor which runs the tasks of the {@code storeAsync}
+     * and {@code loadAsync} methods.
+     * Unless {@link #setExecutor(Executor)} has been called before, this is
+     * a new executor as created by {@link #newExecutor(int, int)} with
+     * {@link #DEFAULT_IO_THREADS} and {@link #DEFAULT_IO_QUEUE_SIZE} as its
+     * parameters.
+     *
+     * @return The executor for the asynchronous methods
+     *         - {@code null} is never returned.
+     */
+    public static synchronized Executor getExecutor() {
+        if (null == executor)
+            executor = newExecutor(DEFAULT_IO_THREADS, DEFAULT_IO_QUEUE_SIZE);
+        return executor;
+    }
+
+    /**
+     * Sets the executor which runs the tasks of the {@code storeAsync}
+     * and {@code loadAsync} methods.
+     * The previous executor is <em>not</em> shut down.
+     *
+     * @param executor the executor for the asynchronous methods
+     *        - may be {@code null} to create a default executor on demand.
+     */
+    public static synchronized void setExecutor(Executor executor) {
+        PersistenceService.executor = executor;
+    }
+
+    /**
+     * Returns a new executor which is suitable for blocking I/O.
+     * The executor runs its tasks on up to the given number of daemon
+     * threads, which terminate when idle.
+     * If all threads are busy, tasks get queued up to the given capacity.
+     * If the queue is full, tasks get rejected, which makes the stages
+     * returned by the asynchronous methods complete exceptionally with a
+     * {@link RejectedExecutionException}.
+     *
+     * @param  threads the maximum number of threads.
+     * @param  queueSize the capacity of the task queue.
+     * @return A new executor - {@code null} is never returned.
+     * @throws IllegalArgumentException if any parameter is not positive.
+     */
+    public static ExecutorService newExecutor(
+            final int threads,
+            final int queueSize) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        final Thread thread = new Thread(r,
+                                PersistenceService.class.getSimpleName()
+                                + "-I/O-" + count.incrementAndGet()); // NOI18N
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs the given task on the given executor and returns a stage which
+     * completes with its result.
+     * If the task throws any throwable or gets rejected by the executor, the
+     * stage completes exceptionally with it.
+     * This is used by the asynchronous methods of this class and of the
+     * license managers.
+     *
+     * @param  executor the executor for the task
+     *         - may <em>not</em> be {@code null}.
+     * @param  task the task to run
+     *         - may <em>not</em> be {@code null}.
+     * @return A stage which completes with the result of the task
+     *         - {@code null} is never returned.
+     */
+    public static <V> CompletionStage<V> submit(
+            final Executor executor,
+            final Callable<V> task) {
+        if (null == task) throw new NullPointerException();
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        future.complete(task.call());
+                    } catch (final Throwable ex) {
+                        future.completeExceptionally(ex);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
     /**
      * Returns an {@code ExceptionListener}. This custom exception listener
      * enforces zero tolerance when encoding or decoding objects to or from XML
@@ -171,6 +302,21 @@ public class PersistenceService implements XMLConstants {
             final OutputStream xmlOut)
     throws PersistenceServiceException {
         if (null == xmlOut) throw new NullPointerException();
+        store(root, xmlOut, BUFSIZE);
+    }
+
+    /**
+     * Stores the object {@code root} to the stream {@code xmlOut}, connecting
+     * it to a new {@code BufferedOutputStream} if {@code bufsize} is
+     * positive.
+     * In-memory streams should not be buffered because the
+     * {@code XMLEncoder} already buffers its output.
+     */
+    private static void store(
+            final Object root,
+            final OutputStream xmlOut,
+            final int bufsize)
+    throws PersistenceServiceException {
         // Guard against OutOfMemoryError here!
         // This is not unlikely as XMLEncoder clones the root, which could be
         // a large object graph.
@@ -180,7 +326,9 @@ public class PersistenceService implements XMLConstants {
             OutputStream bufOut = null;
             XMLEncoder encoder = null;
             try {
-                bufOut = new BufferedOutputStream(xmlOut, BUFSIZE);
+                bufOut = 0 < bufsize
+                        ? new BufferedOutputStream(xmlOut, bufsize)
+                        : xmlOut;
                 encoder = new XMLEncoder(bufOut);
                 installPersistenceDelegates(encoder);
                 encoder.setExceptionListener(createExceptionListener());
@@ -227,14 +375,25 @@ public class PersistenceService implements XMLConstants {
      * Stores the object {@code root}, which may form the root of an entire
      * object graph, as XML content to the file {@code file} for long term
      * persistence.
-     * This method supports writing to a file located in a ZIP or JAR file.
      * <p>
      * Please note the following:
      * <ul>
      * <li>This method will <em>not</em> tolerate any I/O or other
      *     serialisation exceptions!</li>
      * <li>This is a transaction, i.e. the method either completely succeeds
-     *     with saving the file or the file is restored to its original state.</li>
+     *     with saving the file or the file is left in its original state.
+     *     The XML content is written to a temporary file in the same
+     *     directory, which is forced to the storage device and then
+     *     atomically moved to {@code file}, so this holds even if the JVM
+     *     or the operating system crashes.
+     *     However, if the file system doesn't support atomic moves, then the
+     *     temporary file gets moved with
+     *     {@link java.nio.file.StandardCopyOption#REPLACE_EXISTING} instead,
+     *     which is not guaranteed to be atomic - see
+     *     {@link AtomicFileWriter}.</li>
+     * <li>If the file exists, its POSIX permissions or its ACL are kept.
+     *     Its owner and group are kept only if the process is privileged to
+     *     change them.</li>
      * </ul>
      *
      * @param  root the object to store - may be {@code null}.
@@ -243,51 +402,68 @@ public class PersistenceService implements XMLConstants {
      * @throws NullPointerException if {@code file} is {@code null}.
      * @throws PersistenceServiceException if <em>any</em> throwable was thrown
      *         during serialization.
+     * @see    AtomicFileWriter
      */
     public static void store(
             final Object root,
             final File file)
     throws PersistenceServiceException {
         if (null == file) throw new NullPointerException();
-        File backup = null;
-        boolean renamed = false;
+        final AtomicFileWriter writer = new AtomicFileWriter();
         try {
-            backup = getRenamedFile(file);
-            renamed = file.renameTo(backup);
-            store(root, new FileOutputStream(file));
-            if (renamed)
-                backup.delete();
-        } catch (Throwable ex) {
-            if (renamed) {
-                // (Note that the stream has been closed by store(...) already!)
-                // The transaction failed at a point in time where the
-                // target file has at least been partially written, so we
-                // need to restore the target file from the backup again.
-                try {
-                    file.delete();
-                } catch (final Throwable paranoid) {
-                    ex = paranoid;
-                }
-                try {
-                    backup.renameTo(file);
-                } catch (final Throwable paranoid) {
-                    ex = paranoid;
-                }
-            }
-            throw ex instanceof PersistenceServiceException
-                    ? (PersistenceServiceException) ex
-                    : new PersistenceServiceException(ex);
+            store(root, file, writer);
+            writer.commit();
+        } catch (final PersistenceServiceException ex) {
+            throw ex;
+        } catch (final Throwable ex) {
+            throw new PersistenceServiceException(ex);
+        } finally {
+            writer.abort(); // no-op if committed
         }
     }
 
-    private static File getRenamedFile(File plainFile) {
-        final StringBuilder path = new StringBuilder(plainFile.getPath());
-        File renamedFile;
-        do {
-            // This should be OK on any current Java platform...
-            renamedFile = new File(path.append('~').toString());
-        } while (renamedFile.exists());
-        return renamedFile;
+    /**
+     * Stores the object {@code root}, which may form the root of an entire
+     * object graph, as XML content to the file {@code file} for long term
+     * persistence as part of a group commit.
+     * The file remains unchanged until the given writer gets
+     * {@link AtomicFileWriter#commit() committed}, which allows to store
+     * many objects in bulk with a single commit.
+     * <p>
+     * Please note the following:
+     * <ul>
+     * <li>This method will <em>not</em> tolerate any I/O or other
+     *     serialisation exceptions!</li>
+     * </ul>
+     *
+     * @param  root the object to store - may be {@code null}.
+     * @param  file the file to output the XML content to
+     *         - may <em>not</em> be {@code null}.
+     * @param  writer the writer for the group commit
+     *         - may <em>not</em> be {@code null}.
+     * @throws NullPointerException if {@code file} or {@code writer} is
+     *         {@code null}.
+     * @throws PersistenceServiceException if <em>any</em> throwable was thrown
+     *         during serialization.
+     */
+    public static void store(
+            final Object root,
+            final File file,
+            final AtomicFileWriter writer)
+    throws PersistenceServiceException {
+        if (null == file || null == writer) throw new NullPointerException();
+        final OutputStream out;
+        try {
+            out = writer.newOutputStream(file);
+        } catch (final Throwable ex) {
+            throw new PersistenceServiceException(ex);
+        }
+        try {
+            store(root, out);
+        } catch (final PersistenceServiceException ex) {
+            writer.discard(out); // don't commit partial content
+            throw ex;
+        }
     }
 
     /**
@@ -312,7 +488,7 @@ public class PersistenceService implements XMLConstants {
     throws PersistenceServiceException {
         try {
             final ByteArrayOutputStream out = new ByteArrayOutputStream();
-            store(root, out);
+            store(root, out, 0);
             return out.toByteArray();
         } catch (final PersistenceServiceException ex) {
             throw ex;
@@ -321,6 +497,81 @@ public class PersistenceService implements XMLConstants {
         }
     }
 
+    /**
+     * Stores the object {@code root}, which may form the root of an entire
+     * object graph, as UTF-8 encoded XML content into the given slice of the
+     * byte array {@code b} for long term persistence.
+     * <p>
+     * Please note the following:
+     * <ul>
+     * <li>This method will <em>not</em> tolerate any I/O or other
+     *     serialisation exceptions!</li>
+     * <li>If the slice is too small, a {@code PersistenceServiceException}
+     *     with a {@link java.nio.BufferOverflowException} as its cause is
+     *     thrown and the content of the slice is undefined.</li>
+     * </ul>
+     *
+     * @param  root the object to store - may be {@code null}.
+     * @param  b the byte array to store the XML content to
+     *         - may <em>not</em> be {@code null}.
+     * @param  off the offset of the slice in {@code b}.
+     * @param  len the length of the slice in {@code b}.
+     * @return The number of bytes stored to the slice.
+     * @throws NullPointerException if {@code b} is {@code null}.
+     * @throws IndexOutOfBoundsException if the slice is out of the bounds of
+     *         {@code b}.
+     * @throws PersistenceServiceException if <em>any</em> throwable was thrown
+     *         during serialization.
+     */
+    public static int store(
+            final Object root,
+            final byte[] b,
+            final int off,
+            final int len)
+    throws PersistenceServiceException {
+        final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        store(root, buffer);
+        return buffer.position() - off;
+    }
+
+    /**
+     * Stores the object {@code root}, which may form the root of an entire
+     * object graph, as UTF-8 encoded XML content into the remaining bytes of
+     * the given buffer for long term persistence.
+     * On success, the position of the buffer is advanced by the number of
+     * bytes stored.
+     * <p>
+     * Please note the following:
+     * <ul>
+     * <li>This method will <em>not</em> tolerate any I/O or other
+     *     serialisation exceptions!</li>
+     * <li>If the buffer does not have enough remaining bytes, a
+     *     {@code PersistenceServiceException} with a
+     *     {@link java.nio.BufferOverflowException} as its cause is thrown
+     *     and the content of the remaining bytes is undefined.</li>
+     * </ul>
+     *
+     * @param  root the object to store - may be {@code null}.
+     * @param  buffer the buffer to store the XML content to
+     *         - may <em>not</em> be {@code null}.
+     * @throws NullPointerException if {@code buffer} is {@code null}.
+     * @throws PersistenceServiceException if <em>any</em> throwable was thrown
+     *         during serialization.
+     */
+    public static void store(
+            final Object root,
+            final ByteBuffer buffer)
+    throws PersistenceServiceException {
+        if (null == buffer) throw new NullPointerException();
+        final int position = buffer.position();
+        try {
+            store(root, new ByteBufferOutputStream(buffer), 0);
+        } catch (final PersistenceServiceException ex) {
+            buffer.position(position);
+            throw ex;
+        }
+    }
+
     /**
      * Stores the object {@code root}, which may form the root of an entire
      * object graph, as XML content into a string for long term persistence.
@@ -341,7 +592,7 @@ public class PersistenceService implements XMLConstants {
     throws PersistenceServiceException {
         try {
             final ByteArrayOutputStream out = new ByteArrayOutputStream();
-            store(root, out);
+            store(root, out, 0);
             return out.toString(XML_CHARSET);
         } catch (final UnsupportedEncodingException ex) {
             throw new AssertionError(ex);
@@ -373,31 +624,73 @@ public class PersistenceService implements XMLConstants {
      *         during serialization.
      */
     public static Object load(InputStream xmlIn)
+    throws PersistenceServiceException {
+        if (null == xmlIn) throw new NullPointerException();
+        return load(xmlIn, BUFSIZE);
+    }
+
+    /**
+     * Loads a single object, which may form the root of an entire object graph,
+     * from XML content in the given input stream {@code xmlIn}, connecting it
+     * to a new {@code BufferedInputStream} if {@code bufsize} is positive.
+     * Streams which are already buffered, e.g. in-memory streams or streams
+     * which decrypt or decompress their data in chunks, should not be
+     * buffered again because the XML parser already buffers its input.
+     * <p>
+     * Please note the following:
+     * <ul>
+     * <li>The stream is <em>always</em> closed (even if an exception is
+     *     thrown).</li>
+     * <li>This method will <em>not</em> tolerate any I/O or other
+     *     deserialisation exceptions!</li>
+     * </ul>
+     *
+     * @param  xmlIn the stream to input the XML content - may
+     *         <em>not</em> be {@code null}.
+     * @param  bufsize the size of the buffer to use or {@code 0} if the
+     *         stream should not be buffered.
+     * @return The root of the loaded object graph - may be {@code null}.
+     * @throws NullPointerException if {@code xmlIn} is {@code null}.
+     * @throws PersistenceServiceException if <em>any</em> throwable was thrown
+     *         during serialization.
+     */
+    public static Object load(final InputStream xmlIn, final int bufsize)
     throws PersistenceServiceException {
         if (null == xmlIn) throw new NullPointerException();
         XMLDecoder decoder = null;
+        Object root = null;
+        PersistenceServiceException failure = null;
         try {
             // Note that the constructor already loads the complete object
             // graph into memory. If anything goes wrong, an unchecked
             // exception is thrown already HERE!
             decoder = new XMLDecoder(
-                    new BufferedInputStream(xmlIn, BUFSIZE),
+                    0 < bufsize
+                        ? new BufferedInputStream(xmlIn, bufsize)
+                        : xmlIn,
                     null,
                     createExceptionListener());
-            return decoder.readObject();
+            root = decoder.readObject();
         } catch (final UndeclaredThrowableException ex) {
-            throw new PersistenceServiceException(ex.getCause()); // unwrap cause
+            failure = new PersistenceServiceException(ex.getCause()); // unwrap cause
         } catch (final Throwable ex) {
-            throw new PersistenceServiceException(ex);
-        } finally {
-            if (null != decoder) {
-                try {
-                    decoder.close(); // Could throw e.g. OutOfMemoryError (again)!
-                } catch (final Throwable paranoid) {
-                    throw new PersistenceServiceException(paranoid);
-                }
+            failure = new PersistenceServiceException(ex);
+        }
+        if (null != decoder) {
+            try {
+                // If parsing has failed, this tries to parse the closed
+                // stream again, so don't let it mask the original failure.
+                decoder.close(); // Could throw e.g. OutOfMemoryError (again)!
+            } catch (final Throwable paranoid) {
+                if (null == failure)
+                    failure = new PersistenceServiceException(paranoid);
+                else
+                    failure.addSuppressed(paranoid);
             }
         }
+        if (null != failure)
+            throw failure;
+        return root;
     }
 
     /**
@@ -451,8 +744,40 @@ public class PersistenceService implements XMLConstants {
     public static Object load(final byte[] encoded)
     throws PersistenceServiceException {
         if (null == encoded) throw new NullPointerException();
+        return load(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Loads a single object, which may form the root of an entire object graph,
+     * from XML content in the given slice of the UTF-8 encoded byte array
+     * {@code b}.
+     * The slice is decoded in place, i.e. without copying it.
+     * <p>
+     * Please note the following:
+     * <ul>
+     * <li>This method will <em>not</em> tolerate any I/O or other
+     *     deserialisation exceptions!</li>
+     * </ul>
+     *
+     * @param  b the byte array holding the XML with UTF-8 charset encoded
+     *         representation of the root of an object graph
+     *         - may <em>not</em> be {@code null}.
+     * @param  off the offset of the slice in {@code b}.
+     * @param  len the length of the slice in {@code b}.
+     * @return The root of the loaded object graph - may be {@code null}.
+     * @throws NullPointerException if {@code b} is {@code null}.
+     * @throws IndexOutOfBoundsException if the slice is out of the bounds of
+     *         {@code b}.
+     * @throws PersistenceServiceException if <em>any</em> throwable was thrown
+     *         during serialization.
+     */
+    public static Object load(final byte[] b, final int off, final int len)
+    throws PersistenceServiceException {
+        if (null == b) throw new NullPointerException();
+        if (0 > off || 0 > len || b.length - off < len)
+            throw new IndexOutOfBoundsException();
         try {
-            return load(new ByteArrayInputStream(encoded));
+            return load(new ByteArrayInputStream(b, off, len), 0);
         } catch (PersistenceServiceException ex) {
             throw ex;
         } catch (Throwable ex) {
@@ -460,6 +785,49 @@ public class PersistenceService implements XMLConstants {
         }
     }
 
+    /**
+     * Loads a single object, which may form the root of an entire object graph,
+     * from XML content in the remaining bytes of the given UTF-8 encoded
+     * buffer.
+     * The buffer is decoded in place, i.e. without copying it to a byte array
+     * first.
+     * On success, the position of the buffer is set to its limit.
+     * <p>
+     * Please note the following:
+     * <ul>
+     * <li>This method will <em>not</em> tolerate any I/O or other
+     *     deserialisation exceptions!</li>
+     * </ul>
+     *
+     * @param  buffer the buffer holding the XML with UTF-8 charset encoded
+     *         representation of the root of an object graph
+     *         - may <em>not</em> be {@code null}.
+     * @return The root of the loaded object graph - may be {@code null}.
+     * @throws NullPointerException if {@code buffer} is {@code null}.
+     * @throws PersistenceServiceException if <em>any</em> throwable was thrown
+     *         during serialization.
+     */
+    public static Object load(final ByteBuffer buffer)
+    throws PersistenceServiceException {
+        if (null == buffer) throw new NullPointerException();
+        final Object root;
+        if (buffer.hasArray()) {
+            root = load(buffer.array(),
+                        buffer.arrayOffset() + buffer.position(),
+                        buffer.remaining());
+        } else {
+            try {
+                root = load(new ByteBufferInputStream(buffer), 0);
+            } catch (PersistenceServiceException ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new PersistenceServiceException(ex);
+            }
+        }
+        buffer.position(buffer.limit());
+        return root;
+    }
+
     /**
      * Loads a single object, which may form the root of an entire object graph,
      * from XML content in the string {@code encoded}.
@@ -490,4 +858,106 @@ public class PersistenceService implements XMLConstants {
             throw new PersistenceServiceException(ex);
         }
     }
+
+    /**
+     * Stores the object {@code root} asynchronously as XML content to the
+     * file {@code file} by calling {@link #store(Object, File)} on the I/O
+     * {@link #getExecutor() executor}.
+     * Note that {@code root} must not be modified until the returned stage
+     * has completed.
+     *
+     * @param  root the object to store - may be {@code null}.
+     * @param  file the file to output the XML content to
+     *         - may <em>not</em> be {@code null}.
+     * @return A stage which completes when the file has been stored or
+     *         completes exceptionally with a
+     *         {@link PersistenceServiceException} or a
+     *         {@link RejectedExecutionException}
+     *         - {@code null} is never returned.
+     * @throws NullPointerException if {@code file} is {@code null}.
+     */
+    public static CompletionStage<Void> storeAsync(
+            final Object root,
+            final File file) {
+        if (null == file) throw new NullPointerException();
+        return submit(getExecutor(), new Callable<Void>() {
+            public Void call() throws PersistenceServiceException {
+                store(root, file);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Loads a single object asynchronously from XML content in the given
+     * file {@code file} by calling {@link #load(File)} on the I/O
+     * {@link #getExecutor() executor}.
+     *
+     * @param  file the file to load the XML content from - may <em>not</em> be
+     *         {@code null}.
+     * @return A stage which completes with the root of the loaded object
+     *         graph or completes exceptionally with a
+     *         {@link PersistenceServiceException} or a
+     *         {@link RejectedExecutionException}
+     *         - {@code null} is never returned.
+     * @throws NullPointerException if {@code file} is {@code null}.
+     */
+    public static CompletionStage<Object> loadAsync(final File file) {
+        if (null == file) throw new NullPointerException();
+        return submit(getExecutor(), new Callable<Object>() {
+            public Object call() throws PersistenceServiceException {
+                return load(file);
+            }
+        });
+    }
+
+    /** Adapts a byte buffer to an output stream. */
+    private static final class ByteBufferOutputStream extends OutputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferOutputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public void write(int b) {
+            buffer.put((byte) b); // may throw BufferOverflowException
+        }
+
+        public void write(byte[] b, int off, int len) {
+            buffer.put(b, off, len); // may throw BufferOverflowException
+        }
+    }
+
+    /** Adapts a byte buffer to an input stream. */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (0 == len) return 0;
+            final int remaining = buffer.remaining();
+            if (0 >= remaining) return -1;
+            if (len > remaining) len = remaining;
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        public long skip(long n) {
+            if (0 >= n) return 0;
+            final int skip = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skip);
+            return skip;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }